@@ -0,0 +1,45 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.io.IOUtils;
+
+/** The bundled DATEX schema and the conversion parameters shared by all the benchmarks. */
+final class BenchmarkSchemas {
+
+    static final QName NPRA_NAMESPACE =
+            new QName("http://www.vegvesen.no/datex/1.0", "npra", "npra");
+
+    private static final String DATEX_SCHEMA = "/datex_2.3.xsd";
+
+    private BenchmarkSchemas() {}
+
+    /** The bundled DATEX 2.3 schema content, read once so benchmarks don't measure disk access. */
+    static byte[] readDatex23Bytes() {
+        try (InputStream input = BenchmarkSchemas.class.getResourceAsStream(DATEX_SCHEMA)) {
+            if (input == null) {
+                throw new RuntimeException(
+                        String.format("Resource '%s' not found.", DATEX_SCHEMA));
+            }
+            return IOUtils.toByteArray(input);
+        } catch (IOException exception) {
+            throw new RuntimeException(
+                    String.format("Error reading resource '%s'.", DATEX_SCHEMA), exception);
+        }
+    }
+
+    static SchemaIndex readDatex23Index() {
+        return new SchemaIndex(Utils.readDocument(new ByteArrayInputStream(readDatex23Bytes())));
+    }
+
+    /** Root types are separated by commas, as in the command line. */
+    static List<String> toRootTypes(String rootTypes) {
+        return Arrays.asList(rootTypes.split(","));
+    }
+}
@@ -0,0 +1,30 @@
+package it.geosolutions.xsd2gml;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation (GC) profiler enabled and the results written as JSON,
+ * the usual JMH command line options can be used to select benchmarks or change the defaults.
+ */
+public final class BenchmarksRunner {
+
+    private BenchmarksRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        Options options =
+                new OptionsBuilder()
+                        .parent(commandLineOptions)
+                        .addProfiler(GCProfiler.class)
+                        .resultFormat(
+                                commandLineOptions.getResultFormat().orElse(ResultFormatType.JSON))
+                        .result(commandLineOptions.getResult().orElse("jmh-result.json"))
+                        .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,93 @@
+package it.geosolutions.xsd2gml;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Walk, merge and conversion of the root types used by the tests. The schema index is built once,
+ * each walk uses a new types graph, so the types closures are always computed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({
+        "GroupOfLocationsLinear",
+        "Situation",
+        "TravelTimeData",
+        "Situation,CctvCameraMetadataRecord"
+    })
+    public String rootTypes;
+
+    private SchemaIndex schemaIndex;
+    private List<String> types;
+    private Map<String, Set<String>> complexTypes;
+
+    @Setup
+    public void setup() {
+        schemaIndex = BenchmarkSchemas.readDatex23Index();
+        types = BenchmarkSchemas.toRootTypes(rootTypes);
+        complexTypes = new SchemaWalker(schemaIndex, types).getRootComplexTypeNames();
+    }
+
+    @Benchmark
+    public SchemaWalker walk() {
+        return new SchemaWalker(schemaIndex, types);
+    }
+
+    /** Merges each walked complex type with its related types, as the converter does. */
+    @Benchmark
+    public Document merge() {
+        Document outputSchema = Xsd2Gml.createOutputSchema();
+        complexTypes.forEach(
+                (name, relatedTypes) -> {
+                    ComplexTypesMerger merger = new ComplexTypesMerger(outputSchema);
+                    merger.merge(schemaIndex, BenchmarkSchemas.NPRA_NAMESPACE, name);
+                    relatedTypes.forEach(
+                            relatedType ->
+                                    merger.merge(
+                                            schemaIndex,
+                                            BenchmarkSchemas.NPRA_NAMESPACE,
+                                            relatedType));
+                });
+        return outputSchema;
+    }
+
+    @Benchmark
+    public Document convert() {
+        return new Xsd2Gml(schemaIndex, BenchmarkSchemas.NPRA_NAMESPACE, types).getGmlSchema();
+    }
+
+    @Benchmark
+    public Document convertPrefixed() {
+        return new Xsd2Gml(schemaIndex, BenchmarkSchemas.NPRA_NAMESPACE, types)
+                .getPrefixedGmlSchema();
+    }
+
+    /** Streamed conversion, only the serialization cost is measured besides the conversion. */
+    @Benchmark
+    public void convertAndWrite() {
+        new Xsd2Gml(schemaIndex, BenchmarkSchemas.NPRA_NAMESPACE, types)
+                .write(NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+}
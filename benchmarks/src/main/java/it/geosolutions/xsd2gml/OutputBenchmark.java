@@ -0,0 +1,92 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Stages working on an already converted schema: serialization, GML extras and differences with
+ * the GML template. The extras modify the schema, so each invocation gets a fresh copy of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputBenchmark {
+
+    @Param({
+        "GroupOfLocationsLinear",
+        "Situation",
+        "TravelTimeData",
+        "Situation,CctvCameraMetadataRecord"
+    })
+    public String rootTypes;
+
+    private Document gmlSchema;
+    private Document prefixedGmlSchema;
+    private Document template;
+    private Document extrasInput;
+
+    @Setup
+    public void setup() throws Exception {
+        Xsd2Gml xsd2Gml =
+                new Xsd2Gml(
+                        BenchmarkSchemas.readDatex23Index(),
+                        BenchmarkSchemas.NPRA_NAMESPACE,
+                        BenchmarkSchemas.toRootTypes(rootTypes));
+        gmlSchema = xsd2Gml.getGmlSchema();
+        prefixedGmlSchema = xsd2Gml.getPrefixedGmlSchema();
+        try (InputStream input =
+                getClass().getResourceAsStream("/" + GmlExtrasPatch.TEMPLATE_RESOURCE)) {
+            template = GmlDiff.documentFromInputStream(input);
+        }
+        // the patch is loaded once per JVM, not measured
+        GmlExtrasPatch.get();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyPrefixedSchema() {
+        extrasInput = (Document) prefixedGmlSchema.cloneNode(true);
+    }
+
+    @Benchmark
+    public String documentToString() {
+        return Utils.documentToString(gmlSchema);
+    }
+
+    @Benchmark
+    public String documentToStringNpraPrefixed() {
+        return Utils.documentToStringNpraPrefixed(gmlSchema, "npra");
+    }
+
+    // seconds per operation, fewer iterations are enough
+    @Benchmark
+    @Warmup(iterations = 1, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    public Document applyDifferences() {
+        return new DiffApplier(extrasInput, GmlExtrasPatch.get(), "npra").applyDifferences();
+    }
+
+    /** Differences between the GML template and the converted schema, as in the report. */
+    @Benchmark
+    @Warmup(iterations = 1, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    public String compare() {
+        return new GmlDiff(prefixedGmlSchema, template).compare();
+    }
+}
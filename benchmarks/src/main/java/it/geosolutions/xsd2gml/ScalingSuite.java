@@ -0,0 +1,407 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import org.w3c.dom.Document;
+
+/**
+ * Runs the conversion stages on synthetic schemas of growing size and reports, for each size and
+ * stage, the best time, the peak heap used and the memory allocated. The growth exponent compares
+ * each size with the previous one, {@code log(time ratio) / log(size ratio)}: about 1 for a linear
+ * stage, about 2 for a quadratic one. Results are printed and written as CSV.
+ *
+ * <p>The peak heap is the sum of the peak usage of each heap memory pool since the stage started,
+ * minus the heap used before it, after a garbage collection. Pools peaks may not happen at the same
+ * time, so it is an upper bound, good enough to compare sizes. Some collectors update the peaks
+ * only when collecting, so the heap used at the end of the stage is considered too. The allocated
+ * memory is the one allocated by the stage thread, it doesn't depend on the collector and is more
+ * stable.
+ */
+public final class ScalingSuite {
+
+    private static final ToDoubleFunction<Measure> TIME = measure -> measure.time;
+    private static final ToDoubleFunction<Measure> PEAK_HEAP = measure -> measure.peakHeap;
+    private static final ToDoubleFunction<Measure> ALLOCATED = measure -> measure.allocated;
+
+    private final Options options;
+
+    // the schema of the current size, the results of a stage are the input of the next ones
+    private byte[] schema;
+    private SchemaIndex schemaIndex;
+    private List<String> rootTypes;
+    private Map<String, Set<String>> complexTypes;
+    private Document prefixedGmlSchema;
+
+    private ScalingSuite(Options options) {
+        this.options = options;
+    }
+
+    /** Measures of a stage for a schema size. */
+    static final class Measure {
+
+        final int classesCount;
+        final String stage;
+        final double time;
+        final double peakHeap;
+        final double allocated;
+
+        Measure(
+                int classesCount, String stage, double time, double peakHeap, double allocated) {
+            this.classesCount = classesCount;
+            this.stage = stage;
+            this.time = time;
+            this.peakHeap = peakHeap;
+            this.allocated = allocated;
+        }
+    }
+
+    private List<Measure> run() {
+        SyntheticSchemaGenerator generator = options.getGenerator();
+        int[] sizes = options.getSizes();
+        // warm up on the smallest size, measures are discarded
+        for (int iteration = 0; iteration < options.getWarmup(); iteration++) {
+            measure(generator.withClassesCount(sizes[0]), 1);
+        }
+        List<Measure> measures = new ArrayList<>();
+        for (int size : sizes) {
+            List<Measure> sizeMeasures;
+            try {
+                sizeMeasures =
+                        measure(generator.withClassesCount(size), options.getRepetitions());
+            } catch (OutOfMemoryError error) {
+                release();
+                System.out.printf(
+                        "Out of memory with %d classes, the bigger sizes are skipped.%n", size);
+                break;
+            }
+            for (Measure measure : sizeMeasures) {
+                System.out.println(format(measure, previous(measures, measure)));
+            }
+            measures.addAll(sizeMeasures);
+        }
+        release();
+        return measures;
+    }
+
+    private List<Measure> measure(SyntheticSchemaGenerator generator, int repetitions) {
+        schema = generator.generate();
+        rootTypes = Collections.singletonList(SyntheticSchemaGenerator.ROOT_TYPE);
+        Map<String, Supplier<Object>> stages = new LinkedHashMap<>();
+        stages.put("read", this::read);
+        stages.put("walk", this::walk);
+        stages.put("merge", this::merge);
+        stages.put("convert", this::convert);
+        stages.put("extras", this::applyExtras);
+        List<Measure> measures = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Object>> stage : stages.entrySet()) {
+            double bestTime = Double.MAX_VALUE;
+            double peakHeap = 0;
+            double allocated = 0;
+            for (int repetition = 0; repetition < repetitions; repetition++) {
+                HeapProbe probe = new HeapProbe();
+                long start = System.nanoTime();
+                stage.getValue().get();
+                bestTime = Math.min(bestTime, (System.nanoTime() - start) / 1_000_000d);
+                peakHeap = Math.max(peakHeap, toMegabytes(probe.getPeak()));
+                allocated = Math.max(allocated, toMegabytes(probe.getAllocated()));
+            }
+            measures.add(
+                    new Measure(
+                            generator.getClassesCount(),
+                            stage.getKey(),
+                            bestTime,
+                            peakHeap,
+                            allocated));
+        }
+        return measures;
+    }
+
+    private Object read() {
+        schemaIndex = new SchemaIndex(Utils.readDocument(new ByteArrayInputStream(schema)));
+        return schemaIndex;
+    }
+
+    private Object walk() {
+        complexTypes = new SchemaWalker(schemaIndex, rootTypes).getRootComplexTypeNames();
+        return complexTypes;
+    }
+
+    /** Merges each walked complex type with its related types, as the converter does. */
+    private Object merge() {
+        Document outputSchema = Xsd2Gml.createOutputSchema();
+        complexTypes.forEach(
+                (name, relatedTypes) -> {
+                    ComplexTypesMerger merger = new ComplexTypesMerger(outputSchema);
+                    merger.merge(schemaIndex, BenchmarkSchemas.NPRA_NAMESPACE, name);
+                    relatedTypes.forEach(
+                            relatedType ->
+                                    merger.merge(
+                                            schemaIndex,
+                                            BenchmarkSchemas.NPRA_NAMESPACE,
+                                            relatedType));
+                });
+        return outputSchema;
+    }
+
+    private Object convert() {
+        prefixedGmlSchema =
+                new Xsd2Gml(schemaIndex, BenchmarkSchemas.NPRA_NAMESPACE, rootTypes)
+                        .getPrefixedGmlSchema();
+        return prefixedGmlSchema;
+    }
+
+    /** The extras modify the schema, a copy of the converted schema is used. */
+    private Object applyExtras() {
+        Document copy = (Document) prefixedGmlSchema.cloneNode(true);
+        return new DiffApplier(copy, GmlExtrasPatch.get(), "npra").applyDifferences();
+    }
+
+    private void release() {
+        schema = null;
+        schemaIndex = null;
+        complexTypes = null;
+        prefixedGmlSchema = null;
+    }
+
+    private static double toMegabytes(long bytes) {
+        return bytes / (1024d * 1024d);
+    }
+
+    private static Measure previous(List<Measure> measures, Measure measure) {
+        for (int index = measures.size() - 1; index >= 0; index--) {
+            if (measures.get(index).stage.equals(measure.stage)) {
+                return measures.get(index);
+            }
+        }
+        return null;
+    }
+
+    /** Growth exponent of a value between two sizes, NaN if it can't be computed. */
+    static double exponent(double previousValue, double value, int previousSize, int size) {
+        if (previousValue <= 0 || value <= 0 || previousSize == size) {
+            return Double.NaN;
+        }
+        return Math.log(value / previousValue) / Math.log((double) size / previousSize);
+    }
+
+    private static String format(Measure measure, Measure previous) {
+        return String.format(
+                Locale.ROOT,
+                "%8d  %-8s %12.2f ms %6s %10.2f MB %6s %10.2f MB %6s",
+                measure.classesCount,
+                measure.stage,
+                measure.time,
+                formatExponent(measure, previous, TIME, "^"),
+                measure.peakHeap,
+                formatExponent(measure, previous, PEAK_HEAP, "^"),
+                measure.allocated,
+                formatExponent(measure, previous, ALLOCATED, "^"));
+    }
+
+    private static String formatExponent(
+            Measure measure, Measure previous, ToDoubleFunction<Measure> metric, String prefix) {
+        if (previous == null) {
+            return "";
+        }
+        double exponent =
+                exponent(
+                        metric.applyAsDouble(previous),
+                        metric.applyAsDouble(measure),
+                        previous.classesCount,
+                        measure.classesCount);
+        return Double.isNaN(exponent) ? "" : String.format(Locale.ROOT, prefix + "%.2f", exponent);
+    }
+
+    private static void writeCsv(List<Measure> measures, File output) throws Exception {
+        try (PrintWriter writer = new PrintWriter(output, StandardCharsets.UTF_8.name())) {
+            writer.println(
+                    "classes,stage,time_ms,time_exponent,peak_heap_mb,peak_heap_exponent,"
+                            + "allocated_mb,allocated_exponent");
+            for (int index = 0; index < measures.size(); index++) {
+                Measure measure = measures.get(index);
+                Measure previous = previous(measures.subList(0, index), measure);
+                writer.println(
+                        String.format(
+                                Locale.ROOT,
+                                "%d,%s,%.3f,%s,%.3f,%s,%.3f,%s",
+                                measure.classesCount,
+                                measure.stage,
+                                measure.time,
+                                formatExponent(measure, previous, TIME, ""),
+                                measure.peakHeap,
+                                formatExponent(measure, previous, PEAK_HEAP, ""),
+                                measure.allocated,
+                                formatExponent(measure, previous, ALLOCATED, "")));
+            }
+        }
+    }
+
+    /** Heap used and memory allocated by this thread since its creation, after a collection. */
+    private static final class HeapProbe {
+
+        private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+        private final long used;
+        private final long allocated;
+
+        HeapProbe() {
+            System.gc();
+            long total = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    pool.resetPeakUsage();
+                    pools.add(pool);
+                    total += pool.getUsage().getUsed();
+                }
+            }
+            this.used = total;
+            this.allocated = getThreadAllocated();
+        }
+
+        long getPeak() {
+            long peak = 0;
+            long current = 0;
+            for (MemoryPoolMXBean pool : pools) {
+                peak += pool.getPeakUsage().getUsed();
+                current += pool.getUsage().getUsed();
+            }
+            return Math.max(0, Math.max(peak, current) - used);
+        }
+
+        /** Memory allocated by this thread, zero if the JVM can't measure it. */
+        long getAllocated() {
+            return Math.max(0, getThreadAllocated() - allocated);
+        }
+
+        private static long getThreadAllocated() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) threads)
+                        .getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return 0;
+        }
+    }
+
+    /** Options of the suite and of the generated schemas, as {@code --name=value} arguments. */
+    static final class Options {
+
+        private int[] sizes = {500, 1000, 2000, 4000, 8000};
+        private int depth = 4;
+        private int fanOut = 3;
+        private int references = 3;
+        private int enumerationValues = 10;
+        private double simpleContentRatio = 0.1;
+        private double unboundedRatio = 0.2;
+        private long seed = 42;
+        private int warmup = 1;
+        private int repetitions = 3;
+        private String result = "scaling-result.csv";
+
+        /** Parses the options starting at the provided argument. */
+        static Options parse(String[] args, int first) {
+            Options options = new Options();
+            for (int index = first; index < args.length; index++) {
+                String[] option = args[index].split("=", 2);
+                if (!option[0].startsWith("--") || option.length != 2) {
+                    throw new IllegalArgumentException(
+                            String.format("Invalid option '%s'.", args[index]));
+                }
+                options.set(option[0].substring(2), option[1]);
+            }
+            return options;
+        }
+
+        private void set(String name, String value) {
+            switch (name) {
+                case "classes":
+                    sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "depth":
+                    depth = Integer.parseInt(value);
+                    break;
+                case "fan-out":
+                    fanOut = Integer.parseInt(value);
+                    break;
+                case "references":
+                    references = Integer.parseInt(value);
+                    break;
+                case "enumeration-values":
+                    enumerationValues = Integer.parseInt(value);
+                    break;
+                case "simple-content-ratio":
+                    simpleContentRatio = Double.parseDouble(value);
+                    break;
+                case "unbounded-ratio":
+                    unboundedRatio = Double.parseDouble(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "repetitions":
+                    repetitions = Integer.parseInt(value);
+                    break;
+                case "result":
+                    result = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            String.format("Unknown option '--%s'.", name));
+            }
+        }
+
+        int[] getSizes() {
+            return sizes;
+        }
+
+        int getWarmup() {
+            return warmup;
+        }
+
+        int getRepetitions() {
+            return repetitions;
+        }
+
+        SyntheticSchemaGenerator getGenerator() {
+            return new SyntheticSchemaGenerator(
+                    sizes[0],
+                    depth,
+                    fanOut,
+                    references,
+                    enumerationValues,
+                    simpleContentRatio,
+                    unboundedRatio,
+                    seed);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args, 0);
+        System.out.printf(
+                "%8s  %-8s %15s %6s %13s %6s %13s%n",
+                "classes", "stage", "time", "", "peak heap", "", "allocated");
+        List<Measure> measures = new ScalingSuite(options).run();
+        File output = new File(options.result);
+        writeCsv(measures, output);
+        System.out.printf("Results written to '%s'.%n", output);
+    }
+}
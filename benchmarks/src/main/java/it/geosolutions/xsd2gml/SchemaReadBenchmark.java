@@ -0,0 +1,50 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/** Reading and indexing of the input schema, the stage that doesn't depend on the root types. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaReadBenchmark {
+
+    private byte[] schema;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        schema = BenchmarkSchemas.readDatex23Bytes();
+        document = Utils.readDocument(new ByteArrayInputStream(schema));
+    }
+
+    @Benchmark
+    public Document readDocument() {
+        return Utils.readDocument(new ByteArrayInputStream(schema));
+    }
+
+    @Benchmark
+    public SchemaIndex indexDocument() {
+        return new SchemaIndex(document);
+    }
+
+    @Benchmark
+    public SchemaModel readModel() {
+        return SchemaModelReader.read(new ByteArrayInputStream(schema));
+    }
+}
@@ -0,0 +1,287 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Generates DATEX shaped schemas of any size. Classes are organized in inheritance trees, the
+ * root of each tree is abstract and each class has {@code fanOut} extensions up to the {@code
+ * depth} level. Each class has an enumeration property, a simple property, {@code references}
+ * properties whose type is another class and the usual extension element. The first reference of
+ * a class is the next class, so all the classes are reachable from {@link #ROOT_TYPE}, the others
+ * are random and may create cycles. A fraction of the enumerations are wrapped in a simple content
+ * type with the {@code _extendedValue} attribute, as DATEX does, and a fraction of the properties
+ * are unbounded. The same parameters and seed always produce the same schema.
+ */
+final class SyntheticSchemaGenerator {
+
+    static final String ROOT_TYPE = "Class0";
+
+    private static final String XS_NAMESPACE = "http://www.w3.org/2001/XMLSchema";
+    private static final String DATEX_NAMESPACE = "http://datex2.eu/schema/2/2_0";
+    private static final String DATEX_PREFIX = "D2LogicalModel";
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private final int classesCount;
+    private final int depth;
+    private final int fanOut;
+    private final int references;
+    private final int enumerationValues;
+    private final double simpleContentRatio;
+    private final double unboundedRatio;
+    private final long seed;
+
+    // number of classes of a complete inheritance tree
+    private final int treeSize;
+
+    SyntheticSchemaGenerator(
+            int classesCount,
+            int depth,
+            int fanOut,
+            int references,
+            int enumerationValues,
+            double simpleContentRatio,
+            double unboundedRatio,
+            long seed) {
+        if (classesCount < 1 || depth < 1 || fanOut < 1 || references < 1) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "Invalid schema shape, classes %d, depth %d, fan out %d and "
+                                    + "references %d should be positive.",
+                            classesCount, depth, fanOut, references));
+        }
+        this.classesCount = classesCount;
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.references = references;
+        this.enumerationValues = enumerationValues;
+        this.simpleContentRatio = simpleContentRatio;
+        this.unboundedRatio = unboundedRatio;
+        this.seed = seed;
+        int size = 0;
+        for (int level = 0, levelSize = 1; level < depth; level++, levelSize *= fanOut) {
+            size += levelSize;
+        }
+        this.treeSize = size;
+    }
+
+    /** Schema with the provided number of classes, the other parameters are the same. */
+    SyntheticSchemaGenerator withClassesCount(int classesCount) {
+        return new SyntheticSchemaGenerator(
+                classesCount,
+                depth,
+                fanOut,
+                references,
+                enumerationValues,
+                simpleContentRatio,
+                unboundedRatio,
+                seed);
+    }
+
+    int getClassesCount() {
+        return classesCount;
+    }
+
+    /** Number of enumerations, one every two classes. */
+    int getEnumerationsCount() {
+        return (classesCount + 1) / 2;
+    }
+
+    byte[] generate() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        write(output);
+        return output.toByteArray();
+    }
+
+    /** Writes the schema to the provided output stream, which will not be closed. */
+    void write(OutputStream output) {
+        try {
+            XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(output, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.setPrefix("xs", XS_NAMESPACE);
+            writer.setPrefix(DATEX_PREFIX, DATEX_NAMESPACE);
+            writer.writeStartElement(XS_NAMESPACE, "schema");
+            writer.writeNamespace("xs", XS_NAMESPACE);
+            writer.writeNamespace(DATEX_PREFIX, DATEX_NAMESPACE);
+            writer.writeAttribute("elementFormDefault", "qualified");
+            writer.writeAttribute("attributeFormDefault", "unqualified");
+            writer.writeAttribute("version", "2.3");
+            writer.writeAttribute("targetNamespace", DATEX_NAMESPACE);
+            writeCommonTypes(writer);
+            // simple content and unbounded choices are independent of the references ones
+            Random random = new Random(seed);
+            Random shapeRandom = new Random(seed + 1);
+            boolean[] simpleContent = new boolean[getEnumerationsCount()];
+            for (int index = 0; index < simpleContent.length; index++) {
+                simpleContent[index] = shapeRandom.nextDouble() < simpleContentRatio;
+                writeEnumeration(writer, index, simpleContent[index]);
+            }
+            for (int index = 0; index < classesCount; index++) {
+                writeClass(writer, index, simpleContent[index / 2], random, shapeRandom);
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (Exception exception) {
+            throw new RuntimeException("Error writing the synthetic schema.", exception);
+        }
+    }
+
+    private void writeCommonTypes(XMLStreamWriter writer) throws Exception {
+        writer.writeStartElement(XS_NAMESPACE, "complexType");
+        writer.writeAttribute("name", "_ExtensionType");
+        writer.writeStartElement(XS_NAMESPACE, "sequence");
+        writer.writeEmptyElement(XS_NAMESPACE, "any");
+        writer.writeAttribute("namespace", "##any");
+        writer.writeAttribute("processContents", "lax");
+        writer.writeAttribute("minOccurs", "0");
+        writer.writeAttribute("maxOccurs", "unbounded");
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writeRestriction(writer, "Float", "xs:float");
+        writeRestriction(writer, "String", "xs:string");
+    }
+
+    private static void writeRestriction(XMLStreamWriter writer, String name, String base)
+            throws Exception {
+        writer.writeStartElement(XS_NAMESPACE, "simpleType");
+        writer.writeAttribute("name", name);
+        writer.writeEmptyElement(XS_NAMESPACE, "restriction");
+        writer.writeAttribute("base", base);
+        writer.writeEndElement();
+    }
+
+    private void writeEnumeration(XMLStreamWriter writer, int index, boolean simpleContent)
+            throws Exception {
+        String name = getEnumerationName(index);
+        if (simpleContent) {
+            writer.writeStartElement(XS_NAMESPACE, "complexType");
+            writer.writeAttribute("name", "_" + name);
+            writer.writeStartElement(XS_NAMESPACE, "simpleContent");
+            writer.writeStartElement(XS_NAMESPACE, "extension");
+            writer.writeAttribute("base", DATEX_PREFIX + ":" + name);
+            writer.writeEmptyElement(XS_NAMESPACE, "attribute");
+            writer.writeAttribute("name", "_extendedValue");
+            writer.writeAttribute("type", "xs:string");
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndElement();
+        }
+        writer.writeStartElement(XS_NAMESPACE, "simpleType");
+        writer.writeAttribute("name", name);
+        writer.writeStartElement(XS_NAMESPACE, "restriction");
+        writer.writeAttribute("base", "xs:string");
+        for (int value = 0; value < enumerationValues; value++) {
+            writer.writeEmptyElement(XS_NAMESPACE, "enumeration");
+            writer.writeAttribute("value", "value" + value);
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    private void writeClass(
+            XMLStreamWriter writer,
+            int index,
+            boolean simpleContent,
+            Random random,
+            Random shapeRandom)
+            throws Exception {
+        String name = getClassName(index);
+        // position of the class in its inheritance tree, the root has no super type
+        int treeIndex = index % treeSize;
+        writer.writeStartElement(XS_NAMESPACE, "complexType");
+        writer.writeAttribute("name", name);
+        if (treeIndex == 0) {
+            writer.writeAttribute("abstract", "true");
+            writer.writeStartElement(XS_NAMESPACE, "sequence");
+        } else {
+            int superIndex = index - treeIndex + (treeIndex - 1) / fanOut;
+            writer.writeStartElement(XS_NAMESPACE, "complexContent");
+            writer.writeStartElement(XS_NAMESPACE, "extension");
+            writer.writeAttribute("base", DATEX_PREFIX + ":" + getClassName(superIndex));
+            writer.writeStartElement(XS_NAMESPACE, "sequence");
+        }
+        String property = "class" + index;
+        String enumeration = getEnumerationName(index / 2);
+        writeProperty(
+                writer,
+                property + "Type",
+                simpleContent ? "_" + enumeration : enumeration,
+                "1",
+                shapeRandom);
+        writeProperty(writer, property + "Value", index % 2 == 0 ? "Float" : "String", "0",
+                shapeRandom);
+        for (int reference = 0; reference < references; reference++) {
+            int referenced =
+                    reference == 0 ? (index + 1) % classesCount : random.nextInt(classesCount);
+            writeProperty(
+                    writer,
+                    property + "Reference" + reference,
+                    getClassName(referenced),
+                    "0",
+                    shapeRandom);
+        }
+        writer.writeEmptyElement(XS_NAMESPACE, "element");
+        writer.writeAttribute("name", property + "Extension");
+        writer.writeAttribute("type", DATEX_PREFIX + ":_ExtensionType");
+        writer.writeAttribute("minOccurs", "0");
+        writer.writeEndElement();
+        if (treeIndex != 0) {
+            writer.writeEndElement();
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+
+    private void writeProperty(
+            XMLStreamWriter writer, String name, String type, String minOccurs, Random random)
+            throws Exception {
+        writer.writeEmptyElement(XS_NAMESPACE, "element");
+        writer.writeAttribute("name", name);
+        writer.writeAttribute("type", DATEX_PREFIX + ":" + type);
+        writer.writeAttribute("minOccurs", minOccurs);
+        writer.writeAttribute(
+                "maxOccurs", random.nextDouble() < unboundedRatio ? "unbounded" : "1");
+    }
+
+    private static String getClassName(int index) {
+        return "Class" + index;
+    }
+
+    private static String getEnumerationName(int index) {
+        return "Type" + index + "Enum";
+    }
+
+    /**
+     * Writes a synthetic schema to a file, the arguments are the output file and the options of
+     * {@link ScalingSuite}, e.g. {@code synthetic.xsd --classes=5000 --depth=6}.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new IllegalArgumentException(
+                    "Usage: <output file> [--classes=N] [--depth=N] [--fan-out=N] "
+                            + "[--references=N] [--enumeration-values=N] "
+                            + "[--simple-content-ratio=R] [--unbounded-ratio=R] [--seed=N]");
+        }
+        ScalingSuite.Options options = ScalingSuite.Options.parse(args, 1);
+        SyntheticSchemaGenerator generator =
+                options.getGenerator().withClassesCount(options.getSizes()[0]);
+        File output = new File(args[0]);
+        try (OutputStream stream = Files.newOutputStream(output.toPath())) {
+            generator.write(stream);
+        }
+        System.out.printf(
+                "Schema with %d classes and %d enumerations written to '%s', root type %s.%n",
+                generator.getClassesCount(),
+                generator.getEnumerationsCount(),
+                output,
+                ROOT_TYPE);
+    }
+}
@@ -4,10 +4,10 @@ import static it.geosolutions.xsd2gml.Utils.extractUnqualifiedTypeName;
 import static it.geosolutions.xsd2gml.Utils.getName;
 import static it.geosolutions.xsd2gml.Utils.getPropertyTypeName;
 import static it.geosolutions.xsd2gml.Utils.getTypeName;
-import static it.geosolutions.xsd2gml.Utils.isSimpleContent;
 import static it.geosolutions.xsd2gml.Utils.qualify;
 import static it.geosolutions.xsd2gml.Xsd2Gml.XML_NAMESPACE;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,18 +21,26 @@ final class ComplexTypeConverter {
 
     private static final Logger LOGGER = Logger.getLogger(ComplexTypeConverter.class.getName());
 
-    private final Document inputSchema;
-    private final Element typeDefinition;
-    private final Set<Element> relatedTypes;
+    private final SchemaTypes schemaTypes;
+    private final Set<String> relatedTypes;
 
     // non qualified name of this complex type
     private final String name;
 
     ComplexTypeConverter(Document inputSchema, Element typeDefinition, Set<Element> relatedTypes) {
-        this.inputSchema = inputSchema;
-        this.typeDefinition = typeDefinition;
+        this(
+                new SchemaIndex(inputSchema),
+                extractUnqualifiedTypeName(typeDefinition, "name"),
+                relatedTypes
+                        .stream()
+                        .map(relatedType -> extractUnqualifiedTypeName(relatedType, "name"))
+                        .collect(Collectors.toSet()));
+    }
+
+    ComplexTypeConverter(SchemaTypes schemaTypes, String name, Set<String> relatedTypes) {
+        this.schemaTypes = schemaTypes;
+        this.name = name;
         this.relatedTypes = relatedTypes;
-        name = extractUnqualifiedTypeName(typeDefinition, "name");
     }
 
     /**
@@ -41,9 +49,12 @@ final class ComplexTypeConverter {
      * will also be declared.
      */
     void toGmlFeature(Document outputSchema, Element outputSchemaRootNode, QName targetNamespace) {
+        long start = System.nanoTime();
         addGmlFeatureConcreteElement(outputSchema, outputSchemaRootNode, targetNamespace);
 	addGmlFeatureType(outputSchema, outputSchemaRootNode, targetNamespace);
         addGmlFeaturePropertyElement(outputSchema, outputSchemaRootNode, targetNamespace);
+        ConversionStats.get().typeConverted();
+        ConversionStats.get().recordPhase(ConversionStats.CONVERT, start);
     }
 
     /**
@@ -67,29 +78,29 @@ final class ComplexTypeConverter {
         extension.appendChild(annotation);
         extension.appendChild(sequence);
 	// if simple type
-	if (isSimpleContent(typeDefinition)) {
+	if (schemaTypes.hasSimpleContent(name)) {
 	    if (LOGGER.isLoggable(Level.INFO))
-		LOGGER.info("Converting SimpleContent: " + typeDefinition.getAttribute("name"));
+		LOGGER.info("Converting SimpleContent: " + name);
 	    handleSimpleContent(outputSchema, outputSchemaRootNode, targetNamespace, sequence);
 	}
         // merge ths complex type info with all the related types, i.e. super and extensions
-        ComplexTypesMerger merger = new ComplexTypesMerger();
-        merger.merge(inputSchema, targetNamespace, typeDefinition);
+        ComplexTypesMerger merger = new ComplexTypesMerger(outputSchema);
+        merger.merge(schemaTypes, targetNamespace, name);
         relatedTypes.forEach(
-                relatedType -> merger.merge(inputSchema, targetNamespace, relatedType));
+                relatedType -> merger.merge(schemaTypes, targetNamespace, relatedType));
         // add the merged info to the complex type
-        merger.addDocumentation(outputSchema, annotation);
-        merger.addAttributes(outputSchema, extension);
-        merger.addProperties(outputSchema, sequence);
+        merger.addDocumentation(annotation);
+        merger.addAttributes(extension);
+        merger.addProperties(sequence);
     }
 
     private void handleSimpleContent(Document outputSchema, Element outputSchemaRootNode, QName targetNamespace,
 	    Element sequence) {
 	// clone the complexType with simpleContent adding a sufix on the name
-	final Element simpleContentElement = (Element) typeDefinition.cloneNode(true);
+	final Element simpleContentElement = schemaTypes.importComplexType(name, outputSchema);
 	final String simpleTypeName = simpleContentElement.getAttribute("name");
 	simpleContentElement.setAttribute("name", simpleTypeName);
-	outputSchemaRootNode.appendChild(outputSchema.adoptNode(simpleContentElement));
+	outputSchemaRootNode.appendChild(simpleContentElement);
 	// build the generated element for this sufixed complex type on sequence
 	Element element = outputSchema.createElementNS(XML_NAMESPACE, "xs:element");
 	element.setAttribute("name", "value");
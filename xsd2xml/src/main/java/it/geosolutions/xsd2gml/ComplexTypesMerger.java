@@ -1,90 +1,84 @@
 package it.geosolutions.xsd2gml;
 
-import static it.geosolutions.xsd2gml.Utils.cloneList;
 import static it.geosolutions.xsd2gml.Utils.extractUnqualifiedTypeName;
 import static it.geosolutions.xsd2gml.Utils.getPropertyTypeName;
 import static it.geosolutions.xsd2gml.Utils.getTypeName;
 import static it.geosolutions.xsd2gml.Utils.qualify;
-import static it.geosolutions.xsd2gml.Utils.searchElement;
-import static it.geosolutions.xsd2gml.Utils.searchElements;
-import static it.geosolutions.xsd2gml.Utils.toElement;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 import javax.xml.namespace.QName;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 final class ComplexTypesMerger {
 
+    private final Document outputSchema;
+
     private final List<Element> documentation = new ArrayList<>();
     private final List<Element> attributes = new ArrayList<>();
     private final List<Element> properties = new ArrayList<>();
 
-    void merge(Document inputSchema, QName targetNamespace, Element complexType) {
+    /** The merged elements will be copied to the provided output schema. */
+    ComplexTypesMerger(Document outputSchema) {
+        this.outputSchema = outputSchema;
+    }
+
+    void merge(SchemaTypes schemaTypes, QName targetNamespace, String complexTypeName) {
         // get the documentation elements
-        documentation.addAll(
-                cloneList(searchElements(complexType, "annotation/documentation"), true));
+        documentation.addAll(schemaTypes.importDocumentation(complexTypeName, outputSchema));
         // get the attributes elements
-        attributes.addAll(searchElements(complexType, "attribute").stream().map(attribute -> {
-            Element clone = toElement(attribute.cloneNode(true));
-            String typeName = clone.getAttribute("type");
+        for (Element attribute : schemaTypes.importAttributes(complexTypeName, outputSchema)) {
+            String typeName = attribute.getAttribute("type");
             if (typeName != null && !typeName.isEmpty()) {
                 String[] parts = typeName.split(":");
                 if (parts.length == 2 && parts[0].equals("D2LogicalModel")) {
-                    clone.setAttribute("type", targetNamespace.getPrefix() + ":" + parts[1]);
+                    attribute.setAttribute("type", targetNamespace.getPrefix() + ":" + parts[1]);
                 }
             }
-            return clone;
-        }).collect(Collectors.toList()));
+            attributes.add(attribute);
+        }
         // get the properties
-        extractProperties(inputSchema, targetNamespace, complexType);
+        extractProperties(schemaTypes, targetNamespace, complexTypeName);
     }
 
-    void addDocumentation(Document outputSchema, Element annotation) {
-        addElements(outputSchema, annotation, documentation);
+    void addDocumentation(Element annotation) {
+        addElements(annotation, documentation);
     }
 
-    void addAttributes(Document outputSchema, Element complexType) {
-        addElements(outputSchema, complexType, attributes);
+    void addAttributes(Element complexType) {
+        addElements(complexType, attributes);
     }
 
-    void addProperties(Document outputSchema, Element sequence) {
-        addElements(outputSchema, sequence, properties);
+    void addProperties(Element sequence) {
+        addElements(sequence, properties);
     }
 
-    private static void addElements(
-            Document outputSchema, Element parentElement, List<Element> elements) {
-        elements.forEach(
-                element -> {
-                    outputSchema.adoptNode(element);
-                    parentElement.appendChild(element);
-                });
+    private static void addElements(Element parentElement, List<Element> elements) {
+        elements.forEach(parentElement::appendChild);
     }
 
-    private void extractProperties(Document schema, QName targetNamespace, Element complexType) {
-        List<Element> elements = searchElements(complexType, "*//element");
+    private void extractProperties(
+            SchemaTypes schemaTypes, QName targetNamespace, String complexTypeName) {
+        List<Element> elements = schemaTypes.importProperties(complexTypeName, outputSchema);
         for (Element element : elements) {
-	    if (isSimpleType(schema, element) || 
-		    (isComplexTypeWithSimpleContent(schema, element) && isSingle(element))) {
+	    if (isSimpleType(schemaTypes, element) ||
+		    (isComplexTypeWithSimpleContent(schemaTypes, element) && isSingle(element))) {
                 // is a simple property so we are done
                 String typeName = extractUnqualifiedTypeName(element, "type");
-                Element simpleProperty = toElement(element.cloneNode(true));
-                simpleProperty.setAttribute("type", qualify(typeName, targetNamespace));
-                properties.add(simpleProperty);
+                element.setAttribute("type", qualify(typeName, targetNamespace));
+                properties.add(element);
                 continue;
             }
             // it's a complex type, let's check if it's single or multiple
-            Element multipleProperty = toElement(element.cloneNode(true));
             String typeName = extractUnqualifiedTypeName(element, "type");
             if (isSingle(element)) {
                 // we can use the type name
-                multipleProperty.setAttribute("type", getTypeName(typeName, targetNamespace));
+                element.setAttribute("type", getTypeName(typeName, targetNamespace));
             } else {
                 // we need to use the property type name
-                multipleProperty.setAttribute("type", getPropertyTypeName(typeName, targetNamespace));
+                element.setAttribute("type", getPropertyTypeName(typeName, targetNamespace));
             }
-            properties.add(multipleProperty);
+            properties.add(element);
         }
     }
 
@@ -104,14 +98,14 @@ final class ComplexTypesMerger {
         return maxOccurs == 1;
     }
 
-    private boolean isSimpleType(Document schema, Element property) {
+    private boolean isSimpleType(SchemaTypes schemaTypes, Element property) {
         String name = extractUnqualifiedTypeName(property, "type");
         // we look for either a simple or a complex type definition to be sure the type exists
-        if (isComplexType(schema, name)) {
+        if (schemaTypes.isComplexType(name)) {
             // it's a complex type
             return false;
         }
-	if (searchElement(schema, String.format("/schema/simpleType[@name='%s']", name)) != null) {
+	if (schemaTypes.isSimpleType(name)) {
             // it's a simple type
             return true;
         }
@@ -119,21 +113,8 @@ final class ComplexTypesMerger {
         throw new RuntimeException(String.format("Definition for type '%s' not found.", name));
     }
 
-    private boolean isComplexType(Document schema, String name) {
-        final Element complexElement =
-                searchElement(schema, String.format("/schema/complexType[@name='%s']", name));
-	return !(complexElement == null);
-    }
-
-    private boolean isComplexTypeWithSimpleContent(Document schema, Element property) {
+    private boolean isComplexTypeWithSimpleContent(SchemaTypes schemaTypes, Element property) {
 	String name = extractUnqualifiedTypeName(property, "type");
-	return isComplexTypeWithSimpleContent(schema, name);
-    }
-
-    private boolean isComplexTypeWithSimpleContent(Document schema, String name) {
-        final Element complexElement =
-                searchElement(schema, String.format("/schema/complexType[@name='%s']", name));
-        if (complexElement == null) return false;
-        return searchElement(complexElement, "simpleContent") != null;
+	return schemaTypes.hasSimpleContent(name);
     }
 }
@@ -0,0 +1,120 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.io.FileUtils;
+import org.w3c.dom.Element;
+
+/**
+ * On disk cache of the GML fragments produced by the conversion of each complex type. Each entry
+ * is stored with the hash of everything the conversion depends on, see {@link TypeHasher}, an
+ * entry with a different hash is invalidated and replaced. Entries of different types can be read
+ * and written concurrently, the same cache can be shared by several conversions.
+ */
+final class ConversionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ConversionCache.class.getName());
+
+    private static final String HASH_ATTRIBUTE = "cache-hash";
+
+    private final File directory;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    ConversionCache(File directory) {
+        this.directory = directory;
+        try {
+            FileUtils.forceMkdir(directory);
+        } catch (IOException exception) {
+            throw new RuntimeException(
+                    String.format("Error creating cache directory '%s'.", directory), exception);
+        }
+    }
+
+    /**
+     * Returns the root element holding the cached fragment of the provided type, or NULL if the
+     * type is not cached or if the cached fragment has a different hash.
+     */
+    Element get(String complexTypeName, String hash) {
+        File entry = getEntryFile(complexTypeName);
+        if (!entry.exists()) {
+            misses.increment();
+            return null;
+        }
+        try (InputStream input = new FileInputStream(entry)) {
+            Element root = XmlSupport.getDocumentBuilder().parse(input).getDocumentElement();
+            if (hash.equals(root.getAttribute(HASH_ATTRIBUTE))) {
+                hits.increment();
+                root.removeAttribute(HASH_ATTRIBUTE);
+                return root;
+            }
+        } catch (Exception exception) {
+            // a broken entry is just replaced
+            LOGGER.log(Level.FINE, "Error reading cache entry " + entry, exception);
+        }
+        invalidations.increment();
+        return null;
+    }
+
+    /** Stores the fragment held by the provided root element, the element is not modified. */
+    void put(String complexTypeName, String hash, Element fragmentRoot) {
+        Element root = (Element) fragmentRoot.cloneNode(true);
+        root.setAttribute(HASH_ATTRIBUTE, hash);
+        // written to a temporary file first, so readers never see partial entries, conversions
+        // sharing the cache may write the same entry concurrently
+        File entry = getEntryFile(complexTypeName);
+        File temporary = null;
+        try {
+            temporary = File.createTempFile(entry.getName(), ".tmp", directory);
+            try (OutputStream output =
+                    new BufferedOutputStream(new FileOutputStream(temporary))) {
+                // no indentation, whitespace must be preserved as it is
+                Transformer transformer = XmlSupport.getTransformer();
+                transformer.transform(new DOMSource(root), new StreamResult(output));
+            }
+            Files.move(
+                    temporary.toPath(),
+                    entry.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception exception) {
+            FileUtils.deleteQuietly(temporary);
+            throw new RuntimeException(
+                    String.format("Error writing cache entry '%s'.", entry), exception);
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    private File getEntryFile(String complexTypeName) {
+        // types names are valid XML names, which are safe file names
+        return new File(directory, complexTypeName + ".xml");
+    }
+}
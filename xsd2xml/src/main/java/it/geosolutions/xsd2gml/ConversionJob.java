@@ -0,0 +1,108 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A conversion of a set of root types to a GML schema file, several jobs can be run against the
+ * same parsed input schema. Jobs are read from a text file, one per line:
+ *
+ * <pre>
+ * rootTypes;prefix;namespace;output
+ * </pre>
+ *
+ * Root types are separated by commas, empty lines and lines starting with # are ignored.
+ */
+final class ConversionJob {
+
+    private final List<String> rootTypes;
+    private final QName targetNamespace;
+    private final File output;
+
+    ConversionJob(List<String> rootTypes, QName targetNamespace, File output) {
+        this.rootTypes = Collections.unmodifiableList(rootTypes);
+        this.targetNamespace = targetNamespace;
+        this.output = output;
+    }
+
+    List<String> getRootTypes() {
+        return rootTypes;
+    }
+
+    QName getTargetNamespace() {
+        return targetNamespace;
+    }
+
+    File getOutput() {
+        return output;
+    }
+
+    /** Reads the jobs listed in the provided file, relative outputs are resolved against it. */
+    static List<ConversionJob> read(File jobsFile) {
+        List<String> lines;
+        try {
+            lines = FileUtils.readLines(jobsFile, StandardCharsets.UTF_8);
+        } catch (IOException exception) {
+            throw new RuntimeException(
+                    String.format("Error reading jobs file '%s'.", jobsFile), exception);
+        }
+        File baseDirectory = jobsFile.getAbsoluteFile().getParentFile();
+        List<ConversionJob> jobs = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            jobs.add(parse(line, i + 1, baseDirectory));
+        }
+        if (jobs.isEmpty()) {
+            throw new RuntimeException(
+                    String.format("No jobs found in jobs file '%s'.", jobsFile));
+        }
+        return jobs;
+    }
+
+    private static ConversionJob parse(String line, int lineNumber, File baseDirectory) {
+        String[] fields = line.split(";", -1);
+        if (fields.length != 4) {
+            throw new RuntimeException(
+                    String.format(
+                            "Invalid job at line %d, expected "
+                                    + "'rootTypes;prefix;namespace;output' but got '%s'.",
+                            lineNumber, line));
+        }
+        List<String> rootTypes = new ArrayList<>();
+        for (String rootType : Arrays.asList(fields[0].split(","))) {
+            if (!rootType.trim().isEmpty()) {
+                rootTypes.add(rootType.trim());
+            }
+        }
+        String prefix = fields[1].trim();
+        String namespace = fields[2].trim();
+        String output = fields[3].trim();
+        if (rootTypes.isEmpty() || prefix.isEmpty() || namespace.isEmpty() || output.isEmpty()) {
+            throw new RuntimeException(
+                    String.format("Invalid job at line %d, all fields are mandatory.", lineNumber));
+        }
+        File outputFile = new File(output);
+        if (!outputFile.isAbsolute()) {
+            outputFile = new File(baseDirectory, output);
+        }
+        // same namespace definition used by the single conversion mode
+        return new ConversionJob(rootTypes, new QName(namespace, prefix, prefix), outputFile);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", rootTypes) + " -> " + output.getPath();
+    }
+}
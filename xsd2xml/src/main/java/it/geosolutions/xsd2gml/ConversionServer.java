@@ -0,0 +1,332 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.Utils.unQualifyName;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.w3c.dom.Document;
+
+/**
+ * Local HTTP conversion service. The input schemas are read and indexed once, their types graphs
+ * are shared by all the requests, and the GML extras patch is loaded at start, so each request
+ * only pays for the conversion itself. The server only listens on the loopback interface.
+ *
+ * <ul>
+ *   <li>GET /convert?schema=name&amp;types=A,B&amp;prefix=npra&amp;namespace=uri[&amp;extras=false]
+ *       returns the GML schema, the schema parameter can be omitted if a single schema is loaded
+ *   <li>GET /stats returns the requests counters as JSON
+ * </ul>
+ */
+final class ConversionServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ConversionServer.class.getName());
+
+    private static final String XML_CONTENT_TYPE = "application/xml; charset=UTF-8";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private final Map<String, LoadedSchema> schemas = new LinkedHashMap<>();
+    private final ForkJoinPool pool;
+    private final Function<QName, ConversionCache> cacheFactory;
+    private final Map<QName, ConversionCache> caches = new ConcurrentHashMap<>();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // requests counters, latencies are in nanoseconds
+    private final long startTime = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder totalLatency = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * Starts a server on the provided loopback port, zero for any free port. If no pool is
+     * provided each conversion is sequential, if no cache factory is provided no cache is used.
+     */
+    ConversionServer(
+            int port,
+            Map<String, SchemaTypes> schemaTypes,
+            ForkJoinPool pool,
+            Function<QName, ConversionCache> cacheFactory)
+            throws IOException {
+        if (schemaTypes.isEmpty()) {
+            throw new IllegalArgumentException("At least one schema should be provided.");
+        }
+        schemaTypes.forEach((name, types) -> schemas.put(name, new LoadedSchema(types)));
+        this.pool = pool;
+        this.cacheFactory = cacheFactory;
+        // load the extras patch now, instead of on the first request
+        GmlExtrasPatch.get();
+        server =
+                HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/convert", this::handleConvert);
+        server.createContext("/stats", this::handleStats);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        server.start();
+        LOGGER.info(
+                String.format(
+                        "Conversion server listening on http://%s:%d/ with schemas %s.",
+                        server.getAddress().getHostString(),
+                        getPort(),
+                        schemas.keySet()));
+    }
+
+    /** The port the server is listening on. */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+        inFlight.increment();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET requests are supported.");
+                return;
+            }
+            Map<String, String> parameters = getParameters(exchange);
+            String error = validate(parameters);
+            if (error != null) {
+                sendError(exchange, 400, error);
+                return;
+            }
+            convert(exchange, parameters);
+        } catch (InvalidRequestException exception) {
+            sendError(exchange, 400, exception.getMessage());
+        } catch (Exception exception) {
+            LOGGER.log(Level.WARNING, "Error handling conversion request.", exception);
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, String.valueOf(exception.getMessage()));
+            } else {
+                // the response was already started, the client will get a truncated schema
+                failures.increment();
+            }
+        } finally {
+            inFlight.decrement();
+            long latency = System.nanoTime() - start;
+            totalLatency.add(latency);
+            maxLatency.accumulateAndGet(latency, Math::max);
+            exchange.close();
+        }
+    }
+
+    /** Returns an error message if the conversion parameters are not valid, NULL otherwise. */
+    private String validate(Map<String, String> parameters) {
+        LoadedSchema schema = getSchema(parameters.get("schema"));
+        if (schema == null) {
+            return String.format(
+                    "Unknown schema '%s', available schemas are %s.",
+                    parameters.get("schema"), schemas.keySet());
+        }
+        for (String parameter : new String[] {"types", "prefix", "namespace"}) {
+            String value = parameters.get(parameter);
+            if (value == null || value.isEmpty()) {
+                return String.format("Parameter '%s' is mandatory.", parameter);
+            }
+        }
+        for (String typeName : getTypes(parameters)) {
+            String unqualifiedTypeName = unQualifyName(typeName);
+            if (!schema.schemaTypes.isComplexType(unqualifiedTypeName)
+                    && !schema.schemaTypes.isSimpleType(unqualifiedTypeName)) {
+                return String.format("Type '%s' not found.", typeName);
+            }
+        }
+        return null;
+    }
+
+    private void convert(HttpExchange exchange, Map<String, String> parameters)
+            throws IOException {
+        LoadedSchema schema = getSchema(parameters.get("schema"));
+        String prefix = parameters.get("prefix");
+        QName targetNamespace = new QName(parameters.get("namespace"), prefix, prefix);
+        ConversionCache cache =
+                cacheFactory == null
+                        ? null
+                        : caches.computeIfAbsent(targetNamespace, cacheFactory);
+        Xsd2Gml converter =
+                new Xsd2Gml(
+                        schema.schemaTypes,
+                        schema.typeGraph,
+                        targetNamespace,
+                        getTypes(parameters),
+                        pool,
+                        cache);
+        exchange.getResponseHeaders().set("Content-Type", XML_CONTENT_TYPE);
+        if ("false".equalsIgnoreCase(parameters.get("extras"))) {
+            // no extras, the converted types are streamed to the response one at the time
+            exchange.sendResponseHeaders(200, 0);
+            try (CountingOutputStream output = newResponseStream(exchange)) {
+                converter.write(output);
+                output.flush();
+                ConversionStats.get().bytesWritten(output.getByteCount());
+            }
+            return;
+        }
+        // extras are applied on the whole schema, before answering so errors can be reported
+        Document result = Main.addGmlExtras(converter.getPrefixedGmlSchema(), prefix);
+        exchange.sendResponseHeaders(200, 0);
+        long start = System.nanoTime();
+        try (CountingOutputStream output = newResponseStream(exchange)) {
+            Utils.writeDocument(result, output);
+            output.flush();
+            ConversionStats.get().bytesWritten(output.getByteCount());
+        }
+        ConversionStats.get().recordPhase(ConversionStats.SERIALIZATION, start);
+    }
+
+    private static CountingOutputStream newResponseStream(HttpExchange exchange) {
+        return new CountingOutputStream(new BufferedOutputStream(exchange.getResponseBody()));
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            long count = requests.sum();
+            long uptime = System.nanoTime() - startTime;
+            String stats =
+                    String.format(
+                            Locale.ROOT,
+                            "{\"requests\":%d,\"failures\":%d,\"inFlight\":%d,"
+                                    + "\"meanLatencyMs\":%.3f,\"maxLatencyMs\":%.3f,"
+                                    + "\"throughputPerSecond\":%.3f,\"uptimeMs\":%d,"
+                                    + "\"conversion\":%s}",
+                            count,
+                            failures.sum(),
+                            inFlight.sum(),
+                            count == 0 ? 0 : totalLatency.sum() / (double) count / 1_000_000,
+                            maxLatency.get() / 1_000_000d,
+                            count / (uptime / 1_000_000_000d),
+                            TimeUnit.NANOSECONDS.toMillis(uptime),
+                            ConversionStats.get().getJson());
+            send(exchange, 200, JSON_CONTENT_TYPE, stats);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private LoadedSchema getSchema(String name) {
+        if (name == null && schemas.size() == 1) {
+            return schemas.values().iterator().next();
+        }
+        return schemas.get(name);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        failures.increment();
+        send(exchange, status, "text/plain; charset=UTF-8", message);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static List<String> getTypes(Map<String, String> parameters) {
+        List<String> types = new ArrayList<>();
+        for (String type : parameters.get("types").split(",")) {
+            if (!type.trim().isEmpty()) {
+                types.add(type.trim());
+            }
+        }
+        return types;
+    }
+
+    private static Map<String, String> getParameters(HttpExchange exchange)
+            throws UnsupportedEncodingException {
+        return parseQuery(exchange.getRequestURI().getRawQuery());
+    }
+
+    /**
+     * Decodes the parameters of a raw query string. Malformed escape sequences are a client error
+     * and are thrown as an InvalidRequestException. The JDK HTTP server already rejects most of
+     * them as invalid URIs.
+     */
+    static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        if (query == null || query.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            try {
+                parameters.put(
+                        URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+            } catch (IllegalArgumentException exception) {
+                // malformed escape sequence, a client error
+                throw new InvalidRequestException(
+                        String.format(
+                                "Parameter '%s' is not correctly encoded: %s",
+                                parameter, exception.getMessage()));
+            }
+        }
+        return parameters;
+    }
+
+    /** A request that can't be handled, answered with a bad request status. */
+    static final class InvalidRequestException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        InvalidRequestException(String message) {
+            super(message);
+        }
+    }
+
+    /** An indexed input schema and its types graph, shared by all the conversions. */
+    private static final class LoadedSchema {
+
+        final SchemaTypes schemaTypes;
+        final TypeGraph typeGraph;
+
+        LoadedSchema(SchemaTypes schemaTypes) {
+            this.schemaTypes = schemaTypes;
+            this.typeGraph = new TypeGraph(schemaTypes);
+        }
+    }
+}
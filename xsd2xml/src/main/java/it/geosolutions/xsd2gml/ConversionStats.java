@@ -0,0 +1,179 @@
+package it.geosolutions.xsd2gml;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * JVM wide statistics of the conversions: wall time of each phase and counters of the work done.
+ * Phases are recorded by the components implementing them, concurrent conversions add up, so the
+ * time of a phase may be greater than the wall time of a conversion. The statistics are published
+ * as an MXBean, so they can be inspected when the converter is embedded.
+ */
+final class ConversionStats implements ConversionStatsMXBean {
+
+    static final String OBJECT_NAME = "it.geosolutions.xsd2gml:type=ConversionStats";
+
+    // phases names
+    static final String READ = "read";
+    static final String MERGE = "merge";
+    static final String WALK = "walk";
+    static final String CONVERT = "convert";
+    static final String SERIALIZATION = "serialization";
+    static final String EXTRAS = "extras";
+    static final String SCHEMAS_COMPILE = "schemas-compile";
+    static final String VALIDATION = "validation";
+
+    private static final Logger LOGGER = Logger.getLogger(ConversionStats.class.getName());
+
+    private static final ConversionStats INSTANCE = register(new ConversionStats());
+
+    private final Map<String, LongAdder> phaseTimes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> phaseCounts = new ConcurrentHashMap<>();
+
+    private final LongAdder xpathEvaluations = new LongAdder();
+    private final LongAdder nodesImported = new LongAdder();
+    private final LongAdder typesVisited = new LongAdder();
+    private final LongAdder typesConverted = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    private ConversionStats() {}
+
+    static ConversionStats get() {
+        return INSTANCE;
+    }
+
+    /** Records a phase execution started at the provided System#nanoTime value. */
+    void recordPhase(String phase, long start) {
+        long elapsed = System.nanoTime() - start;
+        phaseTimes.computeIfAbsent(phase, key -> new LongAdder()).add(elapsed);
+        phaseCounts.computeIfAbsent(phase, key -> new LongAdder()).increment();
+    }
+
+    void xpathEvaluated() {
+        xpathEvaluations.increment();
+    }
+
+    void nodesImported(int count) {
+        nodesImported.add(count);
+    }
+
+    void typesVisited(int count) {
+        typesVisited.add(count);
+    }
+
+    void typeConverted() {
+        typesConverted.increment();
+    }
+
+    void bytesWritten(long count) {
+        bytesWritten.add(count);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTimes() {
+        Map<String, Long> times = new TreeMap<>();
+        phaseTimes.forEach(
+                (phase, time) -> times.put(phase, TimeUnit.NANOSECONDS.toMillis(time.sum())));
+        return times;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        phaseCounts.forEach((phase, count) -> counts.put(phase, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getXPathEvaluations() {
+        return xpathEvaluations.sum();
+    }
+
+    @Override
+    public long getNodesImported() {
+        return nodesImported.sum();
+    }
+
+    @Override
+    public long getTypesVisited() {
+        return typesVisited.sum();
+    }
+
+    @Override
+    public long getTypesConverted() {
+        return typesConverted.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public String getJson() {
+        StringBuilder json = new StringBuilder("{\"phases\":{");
+        Map<String, Long> counts = getPhaseCounts();
+        String separator = "";
+        for (Map.Entry<String, LongAdder> phase : new TreeMap<>(phaseTimes).entrySet()) {
+            json.append(
+                    String.format(
+                            Locale.ROOT,
+                            "%s\"%s\":{\"count\":%d,\"timeMs\":%.3f}",
+                            separator,
+                            phase.getKey(),
+                            counts.getOrDefault(phase.getKey(), 0L),
+                            phase.getValue().sum() / 1_000_000d));
+            separator = ",";
+        }
+        json.append(
+                String.format(
+                        "},\"xpathEvaluations\":%d,\"xpathCacheHits\":%d,"
+                                + "\"xpathCacheMisses\":%d,\"nodesImported\":%d,"
+                                + "\"typesVisited\":%d,\"typesConverted\":%d,"
+                                + "\"bytesWritten\":%d}",
+                        getXPathEvaluations(),
+                        XPathEngine.getCacheHits(),
+                        XPathEngine.getCacheMisses(),
+                        getNodesImported(),
+                        getTypesVisited(),
+                        getTypesConverted(),
+                        getBytesWritten()));
+        return json.toString();
+    }
+
+    @Override
+    public void reset() {
+        phaseTimes.clear();
+        phaseCounts.clear();
+        xpathEvaluations.reset();
+        nodesImported.reset();
+        typesVisited.reset();
+        typesConverted.reset();
+        bytesWritten.reset();
+    }
+
+    private static ConversionStats register(ConversionStats stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (Exception exception) {
+            // statistics are still collected, they are just not published
+            LOGGER.log(
+                    Level.WARNING, "Error registering the conversion statistics MBean.", exception);
+        }
+        return stats;
+    }
+}
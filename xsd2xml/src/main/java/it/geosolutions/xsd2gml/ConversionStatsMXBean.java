@@ -0,0 +1,32 @@
+package it.geosolutions.xsd2gml;
+
+import java.util.Map;
+
+/**
+ * Management interface of the conversion statistics, registered as {@value
+ * ConversionStats#OBJECT_NAME} in the platform MBean server.
+ */
+public interface ConversionStatsMXBean {
+
+    /** Wall time in milliseconds spent in each phase, summed over all the conversions. */
+    Map<String, Long> getPhaseTimes();
+
+    /** Number of times each phase was executed. */
+    Map<String, Long> getPhaseCounts();
+
+    long getXPathEvaluations();
+
+    /** Number of nodes, each with its sub tree, imported or cloned from another document. */
+    long getNodesImported();
+
+    long getTypesVisited();
+
+    long getTypesConverted();
+
+    long getBytesWritten();
+
+    /** The statistics as JSON. */
+    String getJson();
+
+    void reset();
+}
@@ -4,15 +4,22 @@ import static it.geosolutions.xsd2gml.GmlDiff.findElementsXpath;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -24,22 +31,128 @@ public class DiffApplier {
     private static final List<String> ATTRIBUTES_TO_REPLACE = Arrays.asList("type", "base");
 
     private Document originalDoc;
+    // template the rules elements are taken from, NULL when a precompiled patch is used
+    private final Document templateDoc;
 
-    private Document templateDoc;
+    // imports in the original document the template element of a rule
+    private final BiFunction<String, Document, Element> templateElements;
     private Set<String> xpathRules;
     private final String targetPrefix;
 
     public DiffApplier(
             Document originalDoc, Document templateDoc, String diffText, String targetPrefix) {
-        super();
+        this(
+                originalDoc,
+                templateDoc,
+                Arrays.asList(diffText.split("\\r?\\n")),
+                (xpath, target) -> {
+                    Element templateElement = findElementsXpath(xpath, templateDoc).get(0);
+                    ConversionStats.get().nodesImported(1);
+                    return (Element) target.importNode(templateElement, true);
+                },
+                targetPrefix);
+    }
+
+    /** Applies the rules of the precompiled patch, the template document is not needed. */
+    DiffApplier(Document originalDoc, GmlExtrasPatch patch, String targetPrefix) {
+        this(originalDoc, null, patch.getRules(), patch::importFragment, targetPrefix);
+    }
+
+    private DiffApplier(
+            Document originalDoc,
+            Document templateDoc,
+            List<String> diffList,
+            BiFunction<String, Document, Element> templateElements,
+            String targetPrefix) {
         this.originalDoc = originalDoc;
         this.templateDoc = templateDoc;
+        this.templateElements = templateElements;
         this.targetPrefix = targetPrefix;
-        List<String> diffList = Arrays.asList(diffText.split("\\r?\\n"));
         xpathRules = new HashSet<String>(diffList);
     }
 
     public Document applyDifferences() {
+        long start = System.nanoTime();
+        if (!applyInSinglePass()) {
+            applyOneAtTheTime();
+        }
+        cleanRepeatedNameElements();
+        // modify SituationRecordType -> groupOfLocations type
+        List<Element> groupLocElementList =
+                findElementsXpath(
+                        "/xs:schema/xs:complexType[@name='SituationRecordType']"
+                                + "/xs:complexContent/xs:extension[@base='gml:AbstractFeatureType']"
+                                + "/xs:sequence/xs:element[@name='groupOfLocations'"
+                                + "]",
+                        originalDoc);
+        if (!groupLocElementList.isEmpty()) {
+            Element element = groupLocElementList.get(0);
+            element.setAttribute("type", "npra:GroupOfLocationsType");
+        }
+        ConversionStats.get().recordPhase(ConversionStats.EXTRAS, start);
+        return originalDoc;
+    }
+
+    /**
+     * Applies the rules matching the original document, and the template if any, against all the
+     * rules paths in a single walk. Rules are still applied in the same order, but the elements
+     * with the same name are found in an index of each parent children, and the elements added to
+     * a parent are appended in one batch at the end. Returns FALSE if the rules can't be applied
+     * this way, e.g. when a rule adds children to an element on the path of another rule.
+     */
+    private boolean applyInSinglePass() {
+        DiffRulesTrie trie = DiffRulesTrie.compile(xpathRules);
+        if (trie == null) {
+            LOGGER.fine("Rules are not plain paths, applying them one at the time.");
+            return false;
+        }
+        DiffRulesTrie.Matches originMatches = trie.match(originalDoc);
+        if (originMatches.isAffectedByChanges()) {
+            LOGGER.fine("Rules depend on each other, applying them one at the time.");
+            return false;
+        }
+        BiFunction<String, Document, Element> importer = templateElements;
+        if (templateDoc != null) {
+            DiffRulesTrie.Matches templateMatches = trie.match(templateDoc);
+            importer =
+                    (xpath, target) -> {
+                        Element templateElement = templateMatches.getFirst(xpath);
+                        if (templateElement == null) {
+                            throw new RuntimeException(
+                                    String.format("No template element found for '%s'.", xpath));
+                        }
+                        ConversionStats.get().nodesImported(1);
+                        return (Element) target.importNode(templateElement, true);
+                    };
+        }
+        Map<Element, ParentChildren> parents = new IdentityHashMap<>();
+        for (String xpath : xpathRules) {
+            List<Element> parentElements = originMatches.getParents(xpath);
+            if (parentElements.isEmpty()) {
+                continue;
+            }
+            try {
+                Element importedNode = importer.apply(xpath, originalDoc);
+                // same as checkRepeatedElement, a quote makes the XPath invalid
+                String nameAttrValue = importedNode.getAttribute("name");
+                if (nameAttrValue.indexOf('\'') < 0) {
+                    for (Element parentElement : parentElements) {
+                        parents.computeIfAbsent(parentElement, ParentChildren::new)
+                                .remove(nameAttrValue);
+                    }
+                }
+                parents.computeIfAbsent(parentElements.get(0), ParentChildren::new)
+                        .add(importedNode);
+                replacePrefixes(importedNode);
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+            }
+        }
+        parents.values().forEach(ParentChildren::appendAdded);
+        return true;
+    }
+
+    private void applyOneAtTheTime() {
         for (String xpath : xpathRules) {
             try {
                 if (existsParentElement(xpath)) {
@@ -48,11 +161,9 @@ public class DiffApplier {
                     String parentXpathExpression = parentXpathExpression(xpath);
                     Element originParentElement =
                             findElementsXpath(parentXpathExpression, originalDoc).get(0);
-                    // get template element
-                    Element templateElement = findElementsXpath(xpath, templateDoc).get(0);
-                    checkRepeatedElement(parentXpathExpression, templateElement);
                     // import the template Element
-                    Element importedNode = (Element) originalDoc.importNode(templateElement, true);
+                    Element importedNode = templateElements.apply(xpath, originalDoc);
+                    checkRepeatedElement(parentXpathExpression, importedNode);
                     originParentElement.appendChild(importedNode);
                     replacePrefixes(importedNode);
                 }
@@ -60,20 +171,6 @@ public class DiffApplier {
                 LOGGER.log(Level.WARNING, ex.getMessage(), ex);
             }
         }
-        cleanRepeatedNameElements();
-        // modify SituationRecordType -> groupOfLocations type
-        List<Element> groupLocElementList =
-                findElementsXpath(
-                        "/xs:schema/xs:complexType[@name='SituationRecordType']"
-                                + "/xs:complexContent/xs:extension[@base='gml:AbstractFeatureType']"
-                                + "/xs:sequence/xs:element[@name='groupOfLocations'"
-                                + "]",
-                        originalDoc);
-        if (!groupLocElementList.isEmpty()) {
-            Element element = groupLocElementList.get(0);
-            element.setAttribute("type", "npra:GroupOfLocationsType");
-        }
-        return originalDoc;
     }
 
     private void replacePrefixes(Element element) {
@@ -95,43 +192,76 @@ public class DiffApplier {
         }
     }
 
-    private void cleanRepeatedNameElements() {
-        try {
-            final String parentXpathExpression = "/xs:schema/xs:complexType";
-            List<Element> complexTypeElements =
-                    findElementsXpath(parentXpathExpression, originalDoc);
-            for (Element cte : complexTypeElements) {
-                final String xpath =
-                        parentXpathExpression + "[@name='" + cte.getAttribute("name") + "']";
-                // check if element with same name exists
-                final String nameAttrValue = "name";
-                List<Element> repeatedElements =
-                        findElementsXpath(
-                                xpath + "//xs:element[@name='" + nameAttrValue + "']", originalDoc);
-                // if repated elements found
-                List<Element> elementsForRemove = new ArrayList<>();
-                boolean hasPropertyType = false;
+    /**
+     * Removes, in each complex type, the elements having the same name of an element whose type
+     * is a property type. The schema is traversed once, grouping by name the elements of each
+     * complex type, returns the number of removed elements.
+     */
+    int cleanRepeatedNameElements() {
+        Element schema = originalDoc.getDocumentElement();
+        if (!isSchemaElement(schema, "schema")) {
+            return 0;
+        }
+        int removed = 0;
+        for (Node node = schema.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!isSchemaElement(node, "complexType")) {
+                continue;
+            }
+            Map<String, List<Element>> elementsByName = new LinkedHashMap<>();
+            collectNamedElements((Element) node, elementsByName);
+            for (List<Element> repeatedElements : elementsByName.values()) {
                 if (repeatedElements.size() > 1) {
-                    for (Element re : repeatedElements) {
-                        String attribute = re.getAttribute("type");
-                        if (attribute.endsWith("PropertyType")) {
-                            hasPropertyType = true;
-                        } else {
-                            elementsForRemove.add(re);
-                        }
-                    }
-                    if (hasPropertyType) {
-                        for (Element re : elementsForRemove) {
-                            Node parentNode = re.getParentNode();
-                            parentNode.removeChild(re);
-                        }
-                    }
+                    removed += removeNotPropertyTypes(repeatedElements);
                 }
             }
+        }
+        if (removed > 0) {
+            LOGGER.info(String.format("Removed %d repeated elements.", removed));
+        }
+        return removed;
+    }
+
+    /** Groups by name all the xs:element descendants of the provided element. */
+    private static void collectNamedElements(
+            Element element, Map<String, List<Element>> elementsByName) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!(child instanceof Element)) {
+                continue;
+            }
+            Attr name = ((Element) child).getAttributeNodeNS(null, "name");
+            if (name != null && isSchemaElement(child, "element")) {
+                elementsByName
+                        .computeIfAbsent(name.getValue(), key -> new ArrayList<>())
+                        .add((Element) child);
+            }
+            collectNamedElements((Element) child, elementsByName);
+        }
+    }
 
-        } catch (Exception e) {
-            LOGGER.fine("Unable to check and delete repeated elements.");
+    /** If one of the elements has a property type, the ones that haven't are removed. */
+    private static int removeNotPropertyTypes(List<Element> repeatedElements) {
+        List<Element> elementsForRemove = new ArrayList<>();
+        boolean hasPropertyType = false;
+        for (Element re : repeatedElements) {
+            if (re.getAttribute("type").endsWith("PropertyType")) {
+                hasPropertyType = true;
+            } else {
+                elementsForRemove.add(re);
+            }
+        }
+        if (!hasPropertyType) {
+            return 0;
+        }
+        for (Element re : elementsForRemove) {
+            re.getParentNode().removeChild(re);
         }
+        return elementsForRemove.size();
+    }
+
+    private static boolean isSchemaElement(Node node, String localName) {
+        return node instanceof Element
+                && Xsd2Gml.XML_NAMESPACE.equals(node.getNamespaceURI())
+                && localName.equals(node.getLocalName());
     }
 
     private void checkRepeatedElement(String parentXpathExpression, Element templateElement) {
@@ -161,4 +291,63 @@ public class DiffApplier {
         int lastPathSeparatorIndex = StringUtils.lastIndexOf(xpathExpression, "/");
         return xpathExpression.substring(0, lastPathSeparatorIndex);
     }
+
+    /** The xs:element children of a parent indexed by name, and the children to be added. */
+    private static final class ParentChildren {
+
+        private final Element parent;
+        private final Map<String, List<Element>> elementsByName = new HashMap<>();
+        private final List<Element> added = new ArrayList<>();
+
+        ParentChildren(Element parent) {
+            this.parent = parent;
+            for (Node child = parent.getFirstChild();
+                    child != null;
+                    child = child.getNextSibling()) {
+                if (child instanceof Element) {
+                    index((Element) child);
+                }
+            }
+        }
+
+        /** Removes the xs:element children with the provided name, existing or added. */
+        void remove(String name) {
+            List<Element> elements = elementsByName.remove(name);
+            if (elements == null) {
+                return;
+            }
+            for (Element element : elements) {
+                if (element.getParentNode() == parent) {
+                    parent.removeChild(element);
+                } else {
+                    added.remove(element);
+                }
+            }
+        }
+
+        void add(Element element) {
+            added.add(element);
+            index(element);
+        }
+
+        void appendAdded() {
+            if (added.isEmpty()) {
+                return;
+            }
+            DocumentFragment fragment = parent.getOwnerDocument().createDocumentFragment();
+            for (Element element : added) {
+                fragment.appendChild(element);
+            }
+            parent.appendChild(fragment);
+        }
+
+        private void index(Element element) {
+            Attr name = element.getAttributeNodeNS(null, "name");
+            if (name != null && isSchemaElement(element, "element")) {
+                elementsByName
+                        .computeIfAbsent(name.getValue(), key -> new ArrayList<>())
+                        .add(element);
+            }
+        }
+    }
 }
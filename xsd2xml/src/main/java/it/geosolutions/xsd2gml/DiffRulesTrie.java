@@ -0,0 +1,231 @@
+package it.geosolutions.xsd2gml;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Differences rules compiled in a prefix trie of path steps, so a document is matched against all
+ * the rules in a single walk instead of evaluating each rule XPath. Only rules made of steps like
+ * {@code /xs:name[@attribute='value' and ...]} can be compiled, which is the format of the rules
+ * produced by {@link GmlDiff}.
+ */
+final class DiffRulesTrie {
+
+    private static final Pattern STEP =
+            Pattern.compile(
+                    "/xs:([\\w.-]+)"
+                            + "(?:\\[(@[\\w.-]+='[^']*'(?: and @[\\w.-]+='[^']*')*)\\])?");
+    private static final Pattern PREDICATE = Pattern.compile("@([\\w.-]+)='([^']*)'");
+
+    private static final String NAME_ATTRIBUTE = "name";
+
+    private final Step root = new Step(null, Collections.emptyMap());
+    private final Map<String, Step> rules = new HashMap<>();
+
+    private DiffRulesTrie() {}
+
+    /** Compiles the provided rules, returns NULL if some rule is not a plain path of steps. */
+    static DiffRulesTrie compile(Collection<String> rules) {
+        DiffRulesTrie trie = new DiffRulesTrie();
+        for (String rule : rules) {
+            Step step = trie.root;
+            Matcher matcher = STEP.matcher(rule);
+            int end = 0;
+            while (matcher.find() && matcher.start() == end) {
+                step = step.getChild(matcher.group(), matcher.group(1), matcher.group(2));
+                end = matcher.end();
+            }
+            // at least a parent and a child step
+            if (end != rule.length() || step.parent == null || step.parent == trie.root) {
+                return null;
+            }
+            trie.rules.put(rule, step);
+        }
+        return trie;
+    }
+
+    /** Matches the document against all the rules paths at once. */
+    Matches match(Document document) {
+        Map<Step, List<Element>> matches = new IdentityHashMap<>();
+        matchChildren(
+                root, Collections.singletonList(document.getDocumentElement()), true, matches);
+        return new Matches(matches);
+    }
+
+    /**
+     * Matches the children steps of a step whose matches are provided, the root step is matched by
+     * the document element itself.
+     */
+    private static void matchChildren(
+            Step step,
+            List<Element> elements,
+            boolean isRoot,
+            Map<Step, List<Element>> matches) {
+        for (Element element : elements) {
+            if (isRoot) {
+                step.collectMatches(element, matches);
+                continue;
+            }
+            for (Node child = element.getFirstChild();
+                    child != null;
+                    child = child.getNextSibling()) {
+                if (child instanceof Element) {
+                    step.collectMatches((Element) child, matches);
+                }
+            }
+        }
+        for (Step child : step.children.values()) {
+            List<Element> childMatches = matches.get(child);
+            if (childMatches != null && !child.children.isEmpty()) {
+                matchChildren(child, childMatches, false, matches);
+            }
+        }
+    }
+
+    /** The elements of a document matched by each step of the trie, in document order. */
+    final class Matches {
+
+        private final Map<Step, List<Element>> matches;
+
+        private Matches(Map<Step, List<Element>> matches) {
+            this.matches = matches;
+        }
+
+        /** Elements matching the parent path of the provided rule. */
+        List<Element> getParents(String rule) {
+            return get(rules.get(rule).parent);
+        }
+
+        /** First element matching the provided rule, NULL if none. */
+        Element getFirst(String rule) {
+            List<Element> elements = get(rules.get(rule));
+            return elements.isEmpty() ? null : elements.get(0);
+        }
+
+        /**
+         * TRUE if adding or removing children of the rules parents could change the elements
+         * matched by the path of another rule, in that case the rules should be applied one at
+         * the time.
+         */
+        boolean isAffectedByChanges() {
+            Set<Element> parents = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Step step : rules.values()) {
+                parents.addAll(get(step.parent));
+            }
+            return isAffectedByChanges(root, parents);
+        }
+
+        private boolean isAffectedByChanges(Step step, Set<Element> parents) {
+            for (Step child : step.children.values()) {
+                if (child.children.isEmpty()) {
+                    continue;
+                }
+                // a path continues below a step whose matches children may change
+                for (Element element : get(step)) {
+                    if (parents.contains(element)) {
+                        return true;
+                    }
+                }
+                if (isAffectedByChanges(child, parents)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<Element> get(Step step) {
+            List<Element> elements = matches.get(step);
+            return elements == null ? Collections.emptyList() : elements;
+        }
+    }
+
+    /** A path step, its children are indexed by name and name attribute for a linear walk. */
+    private static final class Step {
+
+        final Step parent;
+        final Map<String, String> attributes;
+
+        final Map<String, Step> children = new LinkedHashMap<>();
+        // children steps by local name plus name attribute, or by local name if not named
+        private final Map<String, List<Step>> named = new HashMap<>();
+        private final Map<String, List<Step>> unnamed = new HashMap<>();
+
+        Step(Step parent, Map<String, String> attributes) {
+            this.parent = parent;
+            this.attributes = attributes;
+        }
+
+        Step getChild(String text, String localName, String predicates) {
+            Step child = children.get(text);
+            if (child != null) {
+                return child;
+            }
+            Map<String, String> attributes = new LinkedHashMap<>();
+            if (predicates != null) {
+                Matcher matcher = PREDICATE.matcher(predicates);
+                while (matcher.find()) {
+                    attributes.put(matcher.group(1), matcher.group(2));
+                }
+            }
+            child = new Step(this, attributes);
+            children.put(text, child);
+            String name = attributes.get(NAME_ATTRIBUTE);
+            if (name == null) {
+                unnamed.computeIfAbsent(localName, key -> new ArrayList<>()).add(child);
+            } else {
+                named.computeIfAbsent(localName + '\u0000' + name, key -> new ArrayList<>())
+                        .add(child);
+            }
+            return child;
+        }
+
+        /** Adds the element to the matches of the children steps it matches. */
+        void collectMatches(Element element, Map<Step, List<Element>> matches) {
+            if (!Xsd2Gml.XML_NAMESPACE.equals(element.getNamespaceURI())) {
+                return;
+            }
+            String localName = element.getLocalName();
+            collectMatches(element, unnamed.get(localName), matches);
+            Attr name = element.getAttributeNodeNS(null, NAME_ATTRIBUTE);
+            if (name != null) {
+                collectMatches(element, named.get(localName + '\u0000' + name.getValue()), matches);
+            }
+        }
+
+        private static void collectMatches(
+                Element element, List<Step> candidates, Map<Step, List<Element>> matches) {
+            if (candidates == null) {
+                return;
+            }
+            for (Step candidate : candidates) {
+                if (candidate.matches(element)) {
+                    matches.computeIfAbsent(candidate, key -> new ArrayList<>()).add(element);
+                }
+            }
+        }
+
+        private boolean matches(Element element) {
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                Attr value = element.getAttributeNodeNS(null, attribute.getKey());
+                if (value == null || !value.getValue().equals(attribute.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
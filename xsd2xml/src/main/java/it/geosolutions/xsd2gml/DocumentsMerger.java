@@ -51,21 +51,32 @@ public class DocumentsMerger {
 	// walk for all document attributes
 	List<Attr> attributes = Utils.searchAttributes(resultDocument.getFirstChild(), "//@*");
 	for (Attr eattr : attributes) {
-	    final String attrName = eattr.getName();
-	    final String value = eattr.getValue();
-            if (("base".equals(attrName)
-                            || "name".equals(attrName)
-                            || "type".equals(attrName)
-                            || "ref".equals(attrName))
-                    && isValidPrefixedValue(value)) {
-                String[] parts = value.split(Pattern.quote(":"));
-                String replaceValue = targetPrefix + ":" + parts[1];
+            String value = eattr.getValue();
+            String replaceValue = translatePrefix(eattr.getName(), value, targetPrefix);
+            if (!replaceValue.equals(value)) {
                 eattr.setValue(replaceValue);
             }
 	}
     }
-    
-    private boolean isValidPrefixedValue(String value) {
+
+    /**
+     * Returns the value of a base, name, type or ref attribute with its prefix replaced by the
+     * target prefix, XML schema and GML prefixes are kept, other attributes are returned as they
+     * are.
+     */
+    static String translatePrefix(String attrName, String value, String targetPrefix) {
+        if (("base".equals(attrName)
+                        || "name".equals(attrName)
+                        || "type".equals(attrName)
+                        || "ref".equals(attrName))
+                && isValidPrefixedValue(value)) {
+            String[] parts = value.split(Pattern.quote(":"));
+            return targetPrefix + ":" + parts[1];
+        }
+        return value;
+    }
+
+    private static boolean isValidPrefixedValue(String value) {
 	if (value == null || value.isEmpty() || !value.contains(":"))
 	    return false;
 	String[] parts = value.split(Pattern.quote(":"));
@@ -80,7 +91,8 @@ public class DocumentsMerger {
         // get all /schema child elements except xs:import
         List<Element> childs = Utils.searchElements(document.getFirstChild(), "child::*");
         for (Element child : childs) {
-            if (!child.getTagName().equals("import")) {
+            // the document is not namespace aware, the tag name is prefixed
+            if (!"import".equals(Utils.unQualifyName(child.getTagName()))) {
                 Element importedChild = (Element) resultDocument.importNode(child, true);
                 resultDocument.getFirstChild().appendChild(importedChild);
                 checkTypeRegistry(importedChild);
@@ -89,7 +101,8 @@ public class DocumentsMerger {
     }
 
     private void checkTypeRegistry(Element importedChild) {
-        String tn = importedChild.getTagName();
+        // the documents are not namespace aware, tags are prefixed
+        String tn = Utils.unQualifyName(importedChild.getTagName());
         if ("element".equals(tn) || "complexType".equals(tn) || "simpleType".equals(tn)) {
             String typeName = importedChild.getAttribute("name");
             if (typesSet.contains(typeName)) {
@@ -101,19 +114,23 @@ public class DocumentsMerger {
     }
 
     private Document getCompiledInitialDocument() {
-        String documentText =
-                "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"no\"?>"
-                        + "<xs:schema xmlns:"
-                        + targetPrefix
-                        + "=\""
-                        + targetNamespaceURI
-                        + "\" "
-                        + "xmlns:gml=\"http://www.opengis.net/gml/3.2\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" "
-                        + "attributeFormDefault=\"unqualified\" elementFormDefault=\"qualified\" "
-                        + "targetNamespace=\""
-                        + targetNamespaceURI
-                        + "\" version=\"3.0\"> </xs:schema>";
+        String documentText = getInitialDocumentText(targetPrefix, targetNamespaceURI);
         return Utils.readDocument(
                 new ByteArrayInputStream(documentText.getBytes(StandardCharsets.UTF_8)));
     }
+
+    /** Text of the empty merged schema, the merged types are added to its root element. */
+    static String getInitialDocumentText(String targetPrefix, String targetNamespaceURI) {
+        return "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"no\"?>"
+                + "<xs:schema xmlns:"
+                + targetPrefix
+                + "=\""
+                + targetNamespaceURI
+                + "\" "
+                + "xmlns:gml=\"http://www.opengis.net/gml/3.2\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" "
+                + "attributeFormDefault=\"unqualified\" elementFormDefault=\"qualified\" "
+                + "targetNamespace=\""
+                + targetNamespaceURI
+                + "\" version=\"3.0\"> </xs:schema>";
+    }
 }
@@ -6,22 +6,22 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.ws.commons.util.NamespaceContextImpl;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -61,9 +61,11 @@ public class GmlDiff {
      */
     static List<Element> getMissingTypeElements(Document target, Document origin) {
         List<Element> missingElements = new ArrayList<>();
-        List<Element> typeElements = getRootTypeElements(target);
-        for (Element element : typeElements) {
-            if (!existsTypeElement(element, origin)) {
+        // origin types are indexed once, instead of being scanned for each target type
+        Set<String> originTypes = getTypeElementsKeys(origin);
+        for (Element element : getRootTypeElements(target)) {
+            String key = getTypeElementKey(element);
+            if (key == null || !originTypes.contains(key)) {
                 missingElements.add(element);
             }
         }
@@ -72,15 +74,36 @@ public class GmlDiff {
 
     static List<Element> getMatchingTypeElements(Document target, Document origin) {
         List<Element> matchingElements = new ArrayList<>();
-        List<Element> typeElements = getRootTypeElements(target);
-        for (Element element : typeElements) {
-            if (existsTypeElement(element, origin)) {
+        Set<String> originTypes = getTypeElementsKeys(origin);
+        for (Element element : getRootTypeElements(target)) {
+            String key = getTypeElementKey(element);
+            if (key != null && originTypes.contains(key)) {
                 matchingElements.add(element);
             }
         }
         return matchingElements;
     }
 
+    /** Keys of the named root elements of the provided document, see {@link #isSameTypeElement}. */
+    private static Set<String> getTypeElementsKeys(Document doc) {
+        Set<String> keys = new HashSet<>();
+        for (Element element : getRootTypeElements(doc)) {
+            String key = getTypeElementKey(element);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /** Tag and name of a root element, NULL if the element has no name. */
+    private static String getTypeElementKey(Element element) {
+        if (!existsAttribute(element, NAME_ATTR)) {
+            return null;
+        }
+        return element.getTagName() + '\u0000' + element.getAttribute(NAME_ATTR);
+    }
+
     static boolean existsTypeElement(Element element, Document anotherDoc) {
         List<Element> typeElements = getRootTypeElements(anotherDoc);
         for (Element el : typeElements) {
@@ -116,25 +139,8 @@ public class GmlDiff {
         return elements;
     }
 
-    static XPath xpath() {
-        XPathFactory factory = XPathFactory.newInstance();
-        XPath xpath = factory.newXPath();
-        NamespaceContextImpl ctx = new NamespaceContextImpl();
-        ctx.startPrefixMapping("xs", "http://www.w3.org/2001/XMLSchema");
-        xpath.setNamespaceContext(ctx);
-        return xpath;
-    }
-
     static DocumentBuilder getNamespaceAwareBuilder() {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        DocumentBuilder builder;
-        try {
-            builder = factory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException(e);
-        }
-        return builder;
+        return XmlSupport.getNamespaceAwareDocumentBuilder();
     }
 
     static Document documentFromText(String documentText) {
@@ -157,7 +163,8 @@ public class GmlDiff {
     static List<Element> findElementsXpath(String xpath, Node node) {
         List<Element> elements = new ArrayList<>();
         try {
-            NodeList nodeList = (NodeList) xpath().evaluate(xpath, node, XPathConstants.NODESET);
+            NodeList nodeList =
+                    (NodeList) XPathEngine.XML_SCHEMA.evaluate(xpath, node, XPathConstants.NODESET);
             for (int i = 0; i < nodeList.getLength(); i++) {
                 Node item = nodeList.item(i);
                 if (item instanceof Element) elements.add((Element) item);
@@ -168,6 +175,15 @@ public class GmlDiff {
         }
     }
 
+    /**
+     * Finds the target elements that have no equivalent in the origin document. An element is
+     * matched by an origin element with the same name and the same values for the identity
+     * attributes it declares, whose parent matches the target element parent, and so on up to the
+     * root. For each target element the walker keeps the origin elements matching its whole path,
+     * and looks for the children matches in hash indexes of the origin elements children, built on
+     * demand, so each origin element is indexed at most once. The XPath of the missing elements is
+     * the same absolute XPath that would match them.
+     */
     static class SubElementsWalker {
 
         Document originDoc;
@@ -175,6 +191,9 @@ public class GmlDiff {
 
         Set<String> missingElementsXpathSet = new HashSet<>();
 
+        // children indexes of the origin elements
+        private final Map<Element, ChildrenIndex> originIndexes = new IdentityHashMap<>();
+
         SubElementsWalker(Document originDoc, Document targetDoc) {
             super();
             this.originDoc = originDoc;
@@ -182,27 +201,37 @@ public class GmlDiff {
         }
 
         Set<String> buildMissingElementsList() {
-            List<Element> childElements = findElementsXpath("/xs:schema/*", targetDoc);
-            for (Element el : childElements) {
-                walkElement(el);
+            Element targetRoot = targetDoc.getDocumentElement();
+            if (!XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(targetRoot.getNamespaceURI())
+                    || !"schema".equals(targetRoot.getLocalName())) {
+                // not a schema, nothing to walk
+                return missingElementsXpathSet;
+            }
+            Element originRoot = originDoc.getDocumentElement();
+            List<Element> originRoots =
+                    isSameStep(targetRoot, originRoot)
+                            ? Collections.singletonList(originRoot)
+                            : Collections.emptyList();
+            for (Element el : getChildElements(targetRoot)) {
+                walkElement(el, originRoots);
             }
             return missingElementsXpathSet;
         }
 
-        private void walkElement(Element targetElement) {
-            String xpathExpression = getXpathExpression(targetElement);
-            // check if element exists on origin document
-            List<Element> elementsFound = findElementsXpath(xpathExpression, originDoc);
+        void walkElement(Element targetElement, List<Element> originParents) {
+            // origin elements matching the whole path of the target element
+            List<Element> elementsFound = new ArrayList<>();
+            for (Element originParent : originParents) {
+                originIndexes
+                        .computeIfAbsent(originParent, ChildrenIndex::new)
+                        .find(targetElement, elementsFound);
+            }
             if (elementsFound.isEmpty()) {
-                missingElementsXpathSet.add(xpathExpression);
+                missingElementsXpathSet.add(getXpathExpression(targetElement));
             } else {
                 // walk into each child element of target element
-                NodeList childNodes = targetElement.getChildNodes();
-                for (int i = 0; i < childNodes.getLength(); i++) {
-                    Node item = childNodes.item(i);
-                    if (item instanceof Element) {
-                        walkElement((Element) item);
-                    }
+                for (Element child : getChildElements(targetElement)) {
+                    walkElement(child, elementsFound);
                 }
             }
         }
@@ -242,6 +271,79 @@ public class GmlDiff {
             }
         }
 
+        /**
+         * TRUE if the origin element has the target element name and the same values for the
+         * identity attributes the target element declares.
+         */
+        static boolean isSameStep(Element target, Element origin) {
+            if (!getStructuralKey(target, null).equals(getStructuralKey(origin, null))) {
+                return false;
+            }
+            for (String attrName : IDENTITY_ATTRIBUTES) {
+                String value = target.getAttribute(attrName);
+                if (StringUtils.isNotBlank(value) && !value.equals(origin.getAttribute(attrName))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Namespace and local name of an element, followed by the name if one is provided. */
+        private static String getStructuralKey(Element element, String name) {
+            String key = element.getNamespaceURI() + '}' + element.getLocalName();
+            return name == null ? key : key + '\u0000' + name;
+        }
+
+        private static List<Element> getChildElements(Element element) {
+            List<Element> children = new ArrayList<>();
+            for (Node child = element.getFirstChild();
+                    child != null;
+                    child = child.getNextSibling()) {
+                if (child instanceof Element) {
+                    children.add((Element) child);
+                }
+            }
+            return children;
+        }
+
+        /** The children of an origin element indexed by name and by name plus name attribute. */
+        private static final class ChildrenIndex {
+
+            private final Map<String, List<Element>> byTag = new HashMap<>();
+            private final Map<String, List<Element>> byName = new HashMap<>();
+
+            ChildrenIndex(Element parent) {
+                for (Element child : getChildElements(parent)) {
+                    byTag.computeIfAbsent(getStructuralKey(child, null), key -> new ArrayList<>())
+                            .add(child);
+                    if (child.hasAttribute(NAME_ATTR)) {
+                        byName.computeIfAbsent(
+                                        getStructuralKey(child, child.getAttribute(NAME_ATTR)),
+                                        key -> new ArrayList<>())
+                                .add(child);
+                    }
+                }
+            }
+
+            /** Adds to the found list the children matching the provided target element. */
+            void find(Element target, List<Element> found) {
+                // the name is the most selective identity attribute
+                String name = target.getAttribute(NAME_ATTR);
+                List<Element> candidates =
+                        StringUtils.isNotBlank(name)
+                                ? byName.get(getStructuralKey(target, name))
+                                : byTag.get(getStructuralKey(target, null));
+                if (candidates == null) {
+                    return;
+                }
+                for (Element candidate : candidates) {
+                    if (isSameStep(target, candidate)) {
+                        found.add(candidate);
+                    }
+                }
+            }
+        }
+
         private boolean equalsElements(Element one, Element two) {
             if (!Objects.equals(one.getTagName(), two.getTagName())
                     || !Objects.equals(one.getPrefix(), two.getPrefix())) return false;
@@ -0,0 +1,180 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.GmlDiff.findElementsXpath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The GML extras differences rules together with the template fragments they point to. The patch
+ * is compiled at build time from the GML template schema and the differences report, and loaded
+ * once per JVM, so applying the extras doesn't need to parse the whole template.
+ */
+final class GmlExtrasPatch {
+
+    static final String PATCH_RESOURCE = "gml_extras_patch.xml";
+    static final String TEMPLATE_RESOURCE = "datex_2.3_gml.xsd";
+    static final String REPORT_RESOURCE = "report.txt";
+
+    private static final Logger LOGGER = Logger.getLogger(GmlExtrasPatch.class.getName());
+
+    private static final String PATCH_ELEMENT = "patch";
+    private static final String FRAGMENT_ELEMENT = "fragment";
+    private static final String XPATH_ATTRIBUTE = "xpath";
+
+    // differences rules in report order
+    private final List<String> rules;
+    // template fragment for each rule, rules not matching the template have no fragment
+    private final Map<String, Element> fragments;
+    private final Document document;
+
+    private GmlExtrasPatch(List<String> rules, Map<String, Element> fragments, Document document) {
+        this.rules = Collections.unmodifiableList(rules);
+        this.fragments = fragments;
+        this.document = document;
+    }
+
+    /** Returns the bundled patch, which is loaded on first use. */
+    static GmlExtrasPatch get() {
+        return BundledPatch.INSTANCE;
+    }
+
+    /** Differences rules, the XPath of each template element that should be added. */
+    List<String> getRules() {
+        return rules;
+    }
+
+    /** Number of rules that have a template fragment. */
+    int size() {
+        return fragments.size();
+    }
+
+    /**
+     * Imports the template fragment of the provided rule in the target document, the patch
+     * document is shared so imports are serialized.
+     */
+    Element importFragment(String rule, Document target) {
+        Element fragment = fragments.get(rule);
+        if (fragment == null) {
+            throw new RuntimeException(String.format("No template element found for '%s'.", rule));
+        }
+        ConversionStats.get().nodesImported(1);
+        synchronized (document) {
+            return (Element) target.importNode(fragment, true);
+        }
+    }
+
+    /** Extracts from the template the elements pointed by the report rules. */
+    static GmlExtrasPatch compile(Document template, String report) {
+        Document document = GmlDiff.getNamespaceAwareBuilder().newDocument();
+        Element patch = document.createElementNS(null, PATCH_ELEMENT);
+        document.appendChild(patch);
+        // declare the template namespaces once, fragments will not need to redeclare them
+        NamedNodeMap attributes = template.getDocumentElement().getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                patch.setAttributeNS(
+                        XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        attribute.getName(),
+                        attribute.getValue());
+            }
+        }
+        for (String rule : report.split("\\r?\\n")) {
+            if (rule.isEmpty()) {
+                continue;
+            }
+            Element fragment = document.createElementNS(null, FRAGMENT_ELEMENT);
+            fragment.setAttribute(XPATH_ATTRIBUTE, rule);
+            List<Element> found = findElementsXpath(rule, template);
+            if (!found.isEmpty()) {
+                fragment.appendChild(document.importNode(found.get(0), true));
+            }
+            patch.appendChild(fragment);
+        }
+        return read(document);
+    }
+
+    /** Reads a compiled patch. */
+    static GmlExtrasPatch read(InputStream input) {
+        return read(GmlDiff.documentFromInputStream(input));
+    }
+
+    /** Writes this patch, the template fragments are written as they are. */
+    void write(OutputStream output) {
+        try {
+            Transformer transformer = XmlSupport.getTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, StandardCharsets.UTF_8.name());
+            transformer.transform(new DOMSource(document), new StreamResult(output));
+        } catch (Exception exception) {
+            throw new RuntimeException("Error writing the GML extras patch.", exception);
+        }
+    }
+
+    private static GmlExtrasPatch read(Document document) {
+        List<String> rules = new ArrayList<>();
+        Map<String, Element> fragments = new LinkedHashMap<>();
+        for (Node node = document.getDocumentElement().getFirstChild();
+                node != null;
+                node = node.getNextSibling()) {
+            if (!(node instanceof Element)) {
+                continue;
+            }
+            String rule = ((Element) node).getAttribute(XPATH_ATTRIBUTE);
+            rules.add(rule);
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof Element) {
+                    fragments.put(rule, (Element) child);
+                    break;
+                }
+            }
+        }
+        return new GmlExtrasPatch(rules, fragments, document);
+    }
+
+    private static GmlExtrasPatch load() {
+        ClassLoader classLoader = GmlExtrasPatch.class.getClassLoader();
+        try (InputStream input = classLoader.getResourceAsStream(PATCH_RESOURCE)) {
+            if (input != null) {
+                return read(input);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException("Error reading the GML extras patch.", exception);
+        }
+        // not compiled at build time, e.g. running from an IDE, let's compile it now
+        LOGGER.info("GML extras patch not found, compiling it from the template.");
+        try (InputStream template = classLoader.getResourceAsStream(TEMPLATE_RESOURCE);
+                InputStream report = classLoader.getResourceAsStream(REPORT_RESOURCE)) {
+            return compile(
+                    GmlDiff.documentFromInputStream(template),
+                    IOUtils.toString(report, StandardCharsets.UTF_8));
+        } catch (IOException exception) {
+            throw new RuntimeException("Error compiling the GML extras patch.", exception);
+        }
+    }
+
+    private static final class BundledPatch {
+        static final GmlExtrasPatch INSTANCE = load();
+    }
+}
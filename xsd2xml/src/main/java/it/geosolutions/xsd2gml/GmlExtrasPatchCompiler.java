@@ -0,0 +1,47 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.Document;
+
+/** Build time entry point that compiles the GML extras patch, see {@link GmlExtrasPatch}. */
+public final class GmlExtrasPatchCompiler {
+
+    private static final Logger LOGGER = Logger.getLogger(GmlExtrasPatchCompiler.class.getName());
+
+    private GmlExtrasPatchCompiler() {}
+
+    /** Expects the GML template, the differences report and the output patch paths. */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException(
+                    "Expected the template, the report and the output patch paths.");
+        }
+        Document template;
+        try (InputStream input = new FileInputStream(args[0])) {
+            template = GmlDiff.documentFromInputStream(input);
+        }
+        String report;
+        try (InputStream input = new FileInputStream(args[1])) {
+            report = IOUtils.toString(input, StandardCharsets.UTF_8);
+        }
+        GmlExtrasPatch patch = GmlExtrasPatch.compile(template, report);
+        File out = new File(args[2]);
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(out))) {
+            patch.write(output);
+        }
+        LOGGER.info(
+                String.format(
+                        "GML extras patch with %d fragments for %d rules written to '%s'.",
+                        patch.size(), patch.getRules().size(), out.getAbsolutePath()));
+    }
+}
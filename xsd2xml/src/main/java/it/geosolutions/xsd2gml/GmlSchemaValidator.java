@@ -0,0 +1,235 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.xerces.impl.xs.XSDDescription;
+import org.apache.xerces.parsers.XMLGrammarPreparser;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.SynchronizedSymbolTable;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+
+/**
+ * Validates the generated GML schemas offline. Remote schemas are resolved from a catalog
+ * mirroring the remote hosts layout, like {@code schemas.opengis.net/gml/3.2.1/gml.xsd}. By default
+ * the catalog bundled in the jar under {@code catalog} is used, it contains the OGC GML 3.2.1
+ * schemas, the ISO 19139 schemas they import and the W3C XLink schema. A catalog directory with
+ * the same layout can replace it. Nothing is downloaded, a remote schema not found in the catalog
+ * is an error.
+ *
+ * <p>The GML schemas of a catalog are compiled once, with a Xerces grammar preparser, in a grammar
+ * pool which is then locked. Each generated schema is compiled against that pool: its GML import
+ * is resolved by namespace from the pool, so the GML schemas are never read nor compiled again and
+ * only the generated schema is compiled. A locked pool is safe to share between threads.
+ */
+final class GmlSchemaValidator {
+
+    private static final Logger LOGGER = Logger.getLogger(GmlSchemaValidator.class.getName());
+
+    static final String CATALOG_DIR_PROP = "it.geosolutions.xsd2gml.catalog-dir";
+
+    static final String GML_SCHEMA_LOCATION = "http://schemas.opengis.net/gml/3.2.1/gml.xsd";
+
+    // the bundled catalog resources folder
+    private static final String CATALOG_RESOURCES = "/catalog/";
+
+    // same constraints checks of the JAXP schemas factory
+    private static final String SCHEMA_FULL_CHECKING =
+            "http://apache.org/xml/features/validation/schema-full-checking";
+
+    // validators by catalog directory, the bundled catalog has an empty key
+    private static final Map<String, GmlSchemaValidator> VALIDATORS = new ConcurrentHashMap<>();
+
+    private final File catalogDirectory;
+    // catalog schemas content by host and path
+    private final Map<String, byte[]> schemas = new ConcurrentHashMap<>();
+
+    // the compiled catalog grammars, shared by all the validations
+    private final SymbolTable symbolTable = new SynchronizedSymbolTable(new SymbolTable());
+    private final XMLGrammarPool gmlGrammars = new XMLGrammarPoolImpl();
+
+    private GmlSchemaValidator(File catalogDirectory) {
+        this.catalogDirectory = catalogDirectory;
+        long start = System.nanoTime();
+        compile(getInput(URI.create(GML_SCHEMA_LOCATION)));
+        gmlGrammars.lockPool();
+        ConversionStats.get().recordPhase(ConversionStats.SCHEMAS_COMPILE, start);
+        LOGGER.info(
+                String.format(
+                        "GML schemas compiled in %d ms from the %s.",
+                        (System.nanoTime() - start) / 1_000_000,
+                        catalogDirectory == null
+                                ? "bundled catalog"
+                                : "'" + catalogDirectory + "' catalog"));
+    }
+
+    /**
+     * Returns the validator of the provided catalog directory, NULL for the bundled catalog. The
+     * GML schemas of a catalog are compiled the first time.
+     */
+    static GmlSchemaValidator get(File catalogDirectory) {
+        String key = catalogDirectory == null ? "" : catalogDirectory.getAbsolutePath();
+        return VALIDATORS.computeIfAbsent(key, name -> new GmlSchemaValidator(catalogDirectory));
+    }
+
+    /**
+     * Validates the provided schema, compiling it against the precompiled GML schemas. A
+     * RuntimeException listing the errors found is thrown if the schema is not valid.
+     */
+    void validate(File schema) {
+        long start = System.nanoTime();
+        compile(new XMLInputSource(null, schema.toURI().toString(), null));
+        ConversionStats.get().recordPhase(ConversionStats.VALIDATION, start);
+        LOGGER.info(
+                String.format(
+                        "Schema '%s' validated in %d ms against the precompiled GML schemas.",
+                        schema.getName(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Compiles a schema with the catalog grammars pool, until the pool is locked the compiled
+     * grammars are added to it.
+     */
+    private void compile(XMLInputSource input) {
+        List<String> errors = new ArrayList<>();
+        XMLGrammarPreparser preparser = new XMLGrammarPreparser(symbolTable);
+        preparser.registerPreparser(XMLGrammarDescription.XML_SCHEMA, null);
+        preparser.setFeature(SCHEMA_FULL_CHECKING, true);
+        preparser.setGrammarPool(gmlGrammars);
+        preparser.setEntityResolver(new CatalogResolver());
+        preparser.setErrorHandler(new ErrorsCollector(errors));
+        try {
+            preparser.preparseGrammar(XMLGrammarDescription.XML_SCHEMA, input);
+        } catch (XMLParseException exception) {
+            // the fatal error was already collected
+        } catch (XNIException | IOException exception) {
+            errors.add("  " + exception.getMessage());
+        }
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(
+                    String.format(
+                            "Schema '%s' is not valid:%n%s",
+                            input.getSystemId(), String.join(System.lineSeparator(), errors)));
+        }
+    }
+
+    private XMLInputSource getInput(URI location) {
+        XMLInputSource input = new XMLInputSource(null, location.toString(), null);
+        input.setByteStream(new ByteArrayInputStream(getSchema(location)));
+        return input;
+    }
+
+    /** Content of a remote schema from the catalog directory, or from the bundled catalog. */
+    private byte[] getSchema(URI location) {
+        String path = location.getHost() + location.getPath();
+        return schemas.computeIfAbsent(
+                path,
+                key -> {
+                    try {
+                        if (catalogDirectory != null) {
+                            File file = new File(catalogDirectory, key);
+                            if (file.isFile()) {
+                                return FileUtils.readFileToByteArray(file);
+                            }
+                        } else {
+                            try (InputStream input =
+                                    GmlSchemaValidator.class.getResourceAsStream(
+                                            CATALOG_RESOURCES + key)) {
+                                if (input != null) {
+                                    return IOUtils.toByteArray(input);
+                                }
+                            }
+                        }
+                    } catch (IOException exception) {
+                        throw new RuntimeException(
+                                String.format("Error reading catalog schema '%s'.", key),
+                                exception);
+                    }
+                    throw new RuntimeException(
+                            String.format(
+                                    "Schema '%s' not found in the local catalog, "
+                                            + "remote schemas are never downloaded.",
+                                    location));
+                });
+    }
+
+    /**
+     * Resolves the remote schemas from the catalog, local schemas are read as they are. Other
+     * external entities, like DTDs, are not resolved.
+     */
+    private final class CatalogResolver implements XMLEntityResolver {
+
+        @Override
+        public XMLInputSource resolveEntity(XMLResourceIdentifier identifier) {
+            String systemId = identifier.getExpandedSystemId();
+            if (systemId == null) {
+                return null;
+            }
+            if (!(identifier instanceof XSDDescription)) {
+                LOGGER.fine(String.format("External entity '%s' not resolved.", systemId));
+                XMLInputSource input = new XMLInputSource(null, systemId, null);
+                input.setByteStream(new ByteArrayInputStream(new byte[0]));
+                return input;
+            }
+            // relative locations of a catalog schema are expanded against its remote location
+            URI location = URI.create(systemId).normalize();
+            if (!"http".equals(location.getScheme()) && !"https".equals(location.getScheme())) {
+                return null;
+            }
+            return getInput(location);
+        }
+    }
+
+    /** Collects the errors messages with their position, warnings are only logged. */
+    private static final class ErrorsCollector implements XMLErrorHandler {
+
+        private final List<String> errors;
+
+        ErrorsCollector(List<String> errors) {
+            this.errors = errors;
+        }
+
+        @Override
+        public void warning(String domain, String key, XMLParseException exception) {
+            LOGGER.fine(format(exception));
+        }
+
+        @Override
+        public void error(String domain, String key, XMLParseException exception) {
+            errors.add(format(exception));
+        }
+
+        @Override
+        public void fatalError(String domain, String key, XMLParseException exception) {
+            errors.add(format(exception));
+            throw exception;
+        }
+
+        private static String format(XMLParseException exception) {
+            return String.format(
+                    "  %s:%d:%d %s",
+                    exception.getExpandedSystemId(),
+                    exception.getLineNumber(),
+                    exception.getColumnNumber(),
+                    exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.Utils.localName;
+
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes a GML schema element by element with an indenting StAX writer. The D2LogicalModel prefix
+ * is replaced by the target prefix in the attributes values while they are written, so the output
+ * schema never needs to exist as a whole in memory nor as a string. Elements are written with
+ * their namespace resolved from the namespaces declared by the schema root element, this works for
+ * both namespace aware and non namespace aware DOM elements.
+ */
+final class GmlSchemaWriter implements AutoCloseable {
+
+    private static final String SOURCE_PREFIX = "D2LogicalModel";
+    private static final String INDENTATION = "  ";
+
+    private final XMLStreamWriter writer;
+    private final String targetPrefix;
+    private final boolean indent;
+    private final boolean emptyElements;
+
+    // namespaces declared by the elements being written, the schema root ones are at the bottom
+    private final Deque<Map<String, String>> namespaces = new ArrayDeque<>();
+    private int depth;
+
+    /** Writes an indented schema to the provided output stream, UTF-8 encoding is used. */
+    GmlSchemaWriter(OutputStream output, String targetPrefix) {
+        this(createStreamWriter(output), targetPrefix, true, true);
+    }
+
+    /**
+     * Writes the schema to the provided StAX writer. Empty elements events should not be used with
+     * DOM backed writers, the JDK one would add the following attributes to the parent element.
+     */
+    GmlSchemaWriter(
+            XMLStreamWriter writer, String targetPrefix, boolean indent, boolean emptyElements) {
+        this.writer = writer;
+        this.targetPrefix = targetPrefix;
+        this.indent = indent;
+        this.emptyElements = emptyElements;
+    }
+
+    /**
+     * Writes the schema as the content of the provided document, which should be empty. The
+     * produced DOM is namespace aware and contains no whitespace only text nodes.
+     */
+    static GmlSchemaWriter toDocument(Document target, String targetPrefix) {
+        try {
+            return new GmlSchemaWriter(
+                    XmlSupport.createStreamWriter(new DOMResult(target)),
+                    targetPrefix,
+                    false,
+                    false);
+        } catch (XMLStreamException exception) {
+            throw new RuntimeException("Error creating the schema DOM writer.", exception);
+        }
+    }
+
+    /** Writes the schema root element start tag, with its attributes but not its children. */
+    void startSchema(Element schemaElement) {
+        try {
+            writeStartElement(schemaElement, false);
+            depth++;
+        } catch (XMLStreamException exception) {
+            throw new RuntimeException("Error writing the schema root element.", exception);
+        }
+    }
+
+    /** Writes the provided element and all its content as a child of the schema root element. */
+    void writeElement(Element element) {
+        try {
+            write(element);
+        } catch (XMLStreamException exception) {
+            throw new RuntimeException(
+                    String.format("Error writing schema element '%s'.", element.getNodeName()),
+                    exception);
+        }
+    }
+
+    /** Writes the schema root element end tag and flushes the writer. */
+    void endSchema() {
+        try {
+            depth--;
+            newLine(depth);
+            writer.writeEndElement();
+            namespaces.pop();
+            if (indent) {
+                writer.writeCharacters("\n");
+            }
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException exception) {
+            throw new RuntimeException("Error ending the schema.", exception);
+        }
+    }
+
+    /** Closes the StAX writer, the underlying output will not be closed. */
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (XMLStreamException exception) {
+            throw new RuntimeException("Error closing the schema writer.", exception);
+        }
+    }
+
+    private void write(Element element) throws XMLStreamException {
+        boolean hasChildElements = false;
+        StringBuilder text = new StringBuilder();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                hasChildElements = true;
+            } else if (child.getNodeType() == Node.TEXT_NODE
+                    || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                text.append(child.getNodeValue());
+            }
+        }
+        // whitespace is not retained, we indent the output ourselves
+        boolean hasText = !text.toString().trim().isEmpty();
+        newLine(depth);
+        if (emptyElements && !hasChildElements && !hasText) {
+            writeStartElement(element, true);
+            namespaces.pop();
+            return;
+        }
+        writeStartElement(element, false);
+        if (hasText) {
+            writer.writeCharacters(text.toString());
+        }
+        if (hasChildElements) {
+            depth++;
+            for (Node child = element.getFirstChild();
+                    child != null;
+                    child = child.getNextSibling()) {
+                if (child instanceof Element) {
+                    write((Element) child);
+                }
+            }
+            depth--;
+            newLine(depth);
+        }
+        writer.writeEndElement();
+        namespaces.pop();
+    }
+
+    private void writeStartElement(Element element, boolean empty) throws XMLStreamException {
+        // collect the namespaces declared by this element first
+        Map<String, String> declared = new HashMap<>();
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            String name = attribute.getName();
+            if (name.equals(XMLConstants.XMLNS_ATTRIBUTE)) {
+                declared.put(XMLConstants.DEFAULT_NS_PREFIX, attribute.getValue());
+            } else if (name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+                declared.put(localName(attribute), attribute.getValue());
+            }
+        }
+        namespaces.push(declared);
+        String prefix = prefix(element.getNodeName());
+        String localName = localName(element);
+        String namespace = element.getNamespaceURI();
+        if (namespace == null) {
+            namespace = resolve(prefix);
+        }
+        if (empty) {
+            writer.writeEmptyElement(prefix, localName, namespace);
+        } else {
+            writer.writeStartElement(prefix, localName, namespace);
+        }
+        for (Map.Entry<String, String> entry : declared.entrySet()) {
+            if (entry.getKey().isEmpty()) {
+                writer.writeDefaultNamespace(entry.getValue());
+            } else {
+                writer.writeNamespace(entry.getKey(), entry.getValue());
+            }
+        }
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            String name = attribute.getName();
+            if (name.equals(XMLConstants.XMLNS_ATTRIBUTE)
+                    || name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+                continue;
+            }
+            // the prefix remapping is done on each written value
+            String value = attribute.getValue().replace(SOURCE_PREFIX, targetPrefix);
+            String attributePrefix = prefix(name);
+            if (attributePrefix.isEmpty()) {
+                writer.writeAttribute(name, value);
+            } else {
+                writer.writeAttribute(
+                        attributePrefix, resolve(attributePrefix), localName(attribute), value);
+            }
+        }
+    }
+
+    private String resolve(String prefix) {
+        if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+            return XMLConstants.XML_NS_URI;
+        }
+        for (Map<String, String> declared : namespaces) {
+            String namespace = declared.get(prefix);
+            if (namespace != null) {
+                return namespace;
+            }
+        }
+        return XMLConstants.NULL_NS_URI;
+    }
+
+    private void newLine(int level) throws XMLStreamException {
+        if (!indent) {
+            return;
+        }
+        StringBuilder builder = new StringBuilder("\n");
+        for (int i = 0; i < level; i++) {
+            builder.append(INDENTATION);
+        }
+        writer.writeCharacters(builder.toString());
+    }
+
+    private static String prefix(String qualifiedName) {
+        int index = qualifiedName.indexOf(':');
+        return index < 0 ? XMLConstants.DEFAULT_NS_PREFIX : qualifiedName.substring(0, index);
+    }
+
+    private static XMLStreamWriter createStreamWriter(OutputStream output) {
+        try {
+            return XmlSupport.createStreamWriter(output);
+        } catch (XMLStreamException exception) {
+            throw new RuntimeException("Error creating the schema writer.", exception);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.Utils.unQualifyName;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Schema types of the files reachable from an entry schema following its imports and includes.
+ * Reachable files are only scanned for the names, super types and simple content of the declared
+ * types, a file is fully read only when the definition of one of its types is needed. The types are
+ * the ones of the merge of the reachable files, as {@link DocumentsMerger} would produce them, so
+ * files not reachable from the entry schema, or not declaring any converted type, are never read.
+ */
+final class LazySchemaTypes implements SchemaTypes {
+
+    private static final Logger LOGGER = Logger.getLogger(LazySchemaTypes.class.getName());
+
+    private final String targetPrefix;
+    private final SchemaModel schemaRoot;
+
+    // reachable files, in discovery order, and the files declaring each type
+    private final Set<File> files = new LinkedHashSet<>();
+    private final Map<String, File> complexTypes = new HashMap<>();
+    private final Map<String, File> simpleTypes = new HashMap<>();
+
+    private final Map<String, String> superTypes = new HashMap<>();
+    private final Set<String> simpleContentTypes = new HashSet<>();
+    private final Map<String, Set<String>> extensions = new HashMap<>();
+
+    // files read so far
+    private final Map<File, SchemaModel> models = new ConcurrentHashMap<>();
+
+    /**
+     * Scans the entry schema and the schemas reachable from it, the types are translated to the
+     * provided prefix and the merged schema root element uses the provided namespace.
+     */
+    LazySchemaTypes(File entrySchema, String targetPrefix, String targetNamespaceURI) {
+        this.targetPrefix = targetPrefix;
+        this.schemaRoot =
+                SchemaModelReader.read(
+                        new ByteArrayInputStream(
+                                DocumentsMerger.getInitialDocumentText(
+                                                targetPrefix, targetNamespaceURI)
+                                        .getBytes(StandardCharsets.UTF_8)));
+        long start = System.nanoTime();
+        Deque<File> pending = new ArrayDeque<>();
+        pending.add(canonical(entrySchema));
+        while (!pending.isEmpty()) {
+            File file = pending.poll();
+            if (files.add(file)) {
+                pending.addAll(scan(file));
+            }
+        }
+        // extensions sets will not change anymore
+        extensions.replaceAll((name, names) -> Collections.unmodifiableSet(names));
+        LOGGER.info(
+                String.format(
+                        "Scanned %d schema files declaring %d types in %d ms.",
+                        files.size(),
+                        complexTypes.size() + simpleTypes.size(),
+                        (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /** Files reachable from the entry schema, in discovery order. */
+    Set<File> getFiles() {
+        return Collections.unmodifiableSet(files);
+    }
+
+    /** Files that were read because the definition of one of their types was needed. */
+    Set<File> getLoadedFiles() {
+        return Collections.unmodifiableSet(models.keySet());
+    }
+
+    @Override
+    public boolean isComplexType(String unqualifiedTypeName) {
+        return complexTypes.containsKey(unqualifiedTypeName);
+    }
+
+    @Override
+    public boolean isSimpleType(String unqualifiedTypeName) {
+        return simpleTypes.containsKey(unqualifiedTypeName);
+    }
+
+    @Override
+    public boolean hasSimpleContent(String unqualifiedTypeName) {
+        return simpleContentTypes.contains(unqualifiedTypeName);
+    }
+
+    @Override
+    public String getSuperTypeName(String unqualifiedTypeName) {
+        return superTypes.get(unqualifiedTypeName);
+    }
+
+    @Override
+    public Set<String> getExtensionNames(String unqualifiedTypeName) {
+        return extensions.getOrDefault(unqualifiedTypeName, Collections.emptySet());
+    }
+
+    @Override
+    public List<String> getPropertyTypeNames(String unqualifiedTypeName) {
+        return getComplexTypeModel(unqualifiedTypeName).getPropertyTypeNames(unqualifiedTypeName);
+    }
+
+    @Override
+    public Element importSchemaElement(Document target) {
+        return schemaRoot.importSchemaElement(target);
+    }
+
+    @Override
+    public Element importComplexType(String unqualifiedTypeName, Document target) {
+        return getComplexTypeModel(unqualifiedTypeName)
+                .importComplexType(unqualifiedTypeName, target);
+    }
+
+    @Override
+    public Element importSimpleType(String unqualifiedTypeName, Document target) {
+        File file = simpleTypes.get(unqualifiedTypeName);
+        if (file == null) {
+            throw new RuntimeException(
+                    String.format("Definition for type '%s' not found.", unqualifiedTypeName));
+        }
+        return getModel(file).importSimpleType(unqualifiedTypeName, target);
+    }
+
+    @Override
+    public List<Element> importDocumentation(String unqualifiedTypeName, Document target) {
+        return getComplexTypeModel(unqualifiedTypeName)
+                .importDocumentation(unqualifiedTypeName, target);
+    }
+
+    @Override
+    public List<Element> importAttributes(String unqualifiedTypeName, Document target) {
+        return getComplexTypeModel(unqualifiedTypeName)
+                .importAttributes(unqualifiedTypeName, target);
+    }
+
+    @Override
+    public List<Element> importProperties(String unqualifiedTypeName, Document target) {
+        return getComplexTypeModel(unqualifiedTypeName)
+                .importProperties(unqualifiedTypeName, target);
+    }
+
+    private SchemaModel getComplexTypeModel(String unqualifiedTypeName) {
+        File file = complexTypes.get(unqualifiedTypeName);
+        if (file == null) {
+            throw new RuntimeException(
+                    String.format("Definition for type '%s' not found.", unqualifiedTypeName));
+        }
+        return getModel(file);
+    }
+
+    private SchemaModel getModel(File file) {
+        return models.computeIfAbsent(
+                file,
+                key -> {
+                    long start = System.nanoTime();
+                    SchemaModel model = SchemaModelReader.read(key.getPath(), targetPrefix);
+                    LOGGER.info(
+                            String.format(
+                                    "Schema file '%s' read in %d ms.",
+                                    key.getName(), (System.nanoTime() - start) / 1_000_000));
+                    return model;
+                });
+    }
+
+    /** Indexes the types declared by the file, returns the files it imports or includes. */
+    private List<File> scan(File file) {
+        List<File> references = new ArrayList<>();
+        try (InputStream input = new FileInputStream(file)) {
+            XMLStreamReader reader = XmlSupport.createNamespaceAwareStreamReader(input);
+            try {
+                // move to the schema root element
+                reader.nextTag();
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    String localName = reader.getLocalName();
+                    if ("import".equals(localName) || "include".equals(localName)) {
+                        File reference =
+                                resolve(file, reader.getAttributeValue(null, "schemaLocation"));
+                        if (reference != null) {
+                            references.add(reference);
+                        }
+                        skipElement(reader, 1);
+                    } else if ("complexType".equals(localName)) {
+                        scanComplexType(file, reader);
+                    } else if ("simpleType".equals(localName)) {
+                        // the first definition wins, as it happens with the merged schema
+                        simpleTypes.putIfAbsent(typeName(reader), file);
+                        skipElement(reader, 1);
+                    } else {
+                        skipElement(reader, 1);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException exception) {
+            throw new RuntimeException(
+                    String.format("Error scanning schema file '%s'.", file), exception);
+        }
+        return references;
+    }
+
+    /** Same indexing of {@link SchemaModel}, the reader is left on the complex type end. */
+    private void scanComplexType(File file, XMLStreamReader reader) throws XMLStreamException {
+        String name = typeName(reader);
+        if (complexTypes.putIfAbsent(name, file) != null) {
+            // duplicated definition, only the first one is used
+            skipElement(reader, 1);
+            return;
+        }
+        List<String> bases = new ArrayList<>();
+        for (int depth = 1; depth > 0; ) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String localName = reader.getLocalName();
+                if (depth == 2 && "simpleContent".equals(localName)) {
+                    simpleContentTypes.add(name);
+                } else if (depth == 3 && "extension".equals(localName)) {
+                    String base = reader.getAttributeValue(null, "base");
+                    bases.add(base == null ? "" : base);
+                }
+                if (depth == 3) {
+                    // deeper elements are not indexed
+                    skipElement(reader, 1);
+                    depth--;
+                }
+            }
+        }
+        if (bases.isEmpty()) {
+            return;
+        }
+        if (bases.size() != 1) {
+            // strange situation, we don't support this
+            throw new RuntimeException("Complex type has more than one child extension node.");
+        }
+        String superTypeName = unQualifyName(bases.get(0));
+        superTypes.put(name, superTypeName);
+        if (!superTypeName.isEmpty()) {
+            extensions.computeIfAbsent(superTypeName, key -> new HashSet<>()).add(name);
+        }
+    }
+
+    private String typeName(XMLStreamReader reader) {
+        String name = reader.getAttributeValue(null, "name");
+        return DocumentsMerger.translatePrefix("name", name == null ? "" : name, targetPrefix);
+    }
+
+    /** Resolves a schema location against the referencing file, remote schemas are skipped. */
+    private static File resolve(File file, String schemaLocation) {
+        if (schemaLocation == null || schemaLocation.isEmpty()) {
+            return null;
+        }
+        URI location = file.toURI().resolve(schemaLocation.replace('\\', '/'));
+        if (!"file".equals(location.getScheme())) {
+            LOGGER.fine(String.format("Remote schema '%s' skipped.", schemaLocation));
+            return null;
+        }
+        File reference = new File(location);
+        if (!reference.isFile()) {
+            LOGGER.warning(
+                    String.format(
+                            "Schema '%s' referenced by '%s' not found.",
+                            schemaLocation, file.getName()));
+            return null;
+        }
+        return canonical(reference);
+    }
+
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException exception) {
+            throw new RuntimeException(
+                    String.format("Error resolving schema file '%s'.", file), exception);
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader, int depth) throws XMLStreamException {
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -1,90 +1,519 @@
 package it.geosolutions.xsd2gml;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.namespace.QName;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.w3c.dom.Document;
 
 public class Main {
 
     private static final String ADD_EXTRAS_PROP = "it.geosolutions.xsd2gml.add-extras";
+    // read the input schema with StAX in a compact model instead of a DOM
+    private static final String STAX_READER_PROP = "it.geosolutions.xsd2gml.stax-reader";
+    // merge the schemas of a directory with StAX to a file instead of merging their DOMs
+    private static final String STREAMING_MERGE_PROP = "it.geosolutions.xsd2gml.streaming-merge";
+    // read only the schemas reachable from the input schema imports and includes, when needed
+    private static final String FOLLOW_IMPORTS_PROP = "it.geosolutions.xsd2gml.follow-imports";
+    // convert the complex types in parallel on the common fork join pool
+    private static final String PARALLEL_PROP = "it.geosolutions.xsd2gml.parallel";
+    // directory where the complex types conversions are cached between runs
+    private static final String CACHE_DIR_PROP = "it.geosolutions.xsd2gml.cache-dir";
+    // local mirror of the OGC schemas used to validate the output, instead of the bundled one
+    private static final String CATALOG_DIR_PROP = GmlSchemaValidator.CATALOG_DIR_PROP;
+    // runs the conversion jobs listed in a file against the same input schema
+    private static final String JOBS_OPTION = "--jobs";
+    // serves conversions on a local HTTP port
+    private static final String SERVE_OPTION = "--serve";
+    // reports the elements of a schema missing in another one, streaming both schemas
+    private static final String DIFF_OPTION = "--diff";
+    // prints the conversion statistics as JSON at the end
+    private static final String STATS_OPTION = "--stats";
+    // validates the produced schemas offline
+    private static final String VALIDATE_OPTION = "--validate";
     private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
 
     public static void main(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        boolean printStats = arguments.remove(STATS_OPTION);
+        boolean validate = arguments.remove(VALIDATE_OPTION);
+        args = arguments.toArray(new String[0]);
         if (args.length == 0 || args[0] == null || args[0].isEmpty()) {
             throw new IllegalArgumentException(
                     "This script need at least a file path as first argument");
         }
+        if (JOBS_OPTION.equals(args[0])) {
+            if (args.length < 3) {
+                throw new IllegalArgumentException(
+                        "Jobs mode needs a jobs file and an input schema: "
+                                + "--jobs <jobs file> <schema file or directory>");
+            }
+            runJobs(ConversionJob.read(new File(args[1])), args[2], validate);
+            printStats(printStats);
+            return;
+        }
+        if (SERVE_OPTION.equals(args[0])) {
+            if (args.length < 3) {
+                throw new IllegalArgumentException(
+                        "Server mode needs a port and at least an input schema: "
+                                + "--serve <port> <schema file or directory>...");
+            }
+            serve(Integer.parseInt(args[1]), Arrays.asList(args).subList(2, args.length));
+            return;
+        }
+        if (DIFF_OPTION.equals(args[0])) {
+            if (args.length < 3) {
+                throw new IllegalArgumentException(
+                        "Diff mode needs two schemas: "
+                                + "--diff <origin schema> <target schema> [report file]");
+            }
+            diff(new File(args[1]), new File(args[2]), args.length > 3 ? args[3] : null);
+            return;
+        }
         String filePath = args[0];
-        File mergeTempFile = null;
+        List<String> rootTypes = Arrays.asList(args[1].split(","));
+        QName targetNamespace = new QName(args[3], args[2], args[2]);
+        // the whole conversion is done in memory, the output is serialized only once
+        ForkJoinPool pool = getPool();
+        ConversionCache cache = getCache(null);
+        SchemaTypes schemaTypes = readSchemaTypes(filePath);
+        long start = System.nanoTime();
+        Xsd2Gml converter = new Xsd2Gml(schemaTypes, targetNamespace, rootTypes, pool, cache);
+        String defaultPath;
+        if (checkIfIsDirectory(filePath)) {
+            defaultPath =
+                    new File(filePath, "merged").getAbsolutePath()
+                            + File.separator
+                            + "convertedSchema"
+                            + File.separator
+                            + "gmlSchema.xsd.converted";
+        } else {
+            defaultPath = filePath + ".converted";
+        }
+        logStage("walk", start);
+        // ask to user output file
+        String outputFile;
+        if (args.length < 5) {
+            outputFile = defaultPath;
+        } else {
+            outputFile = args[4];
+        }
+        convert(converter, targetNamespace, new File(outputFile));
+        if (validate) {
+            validate(new File(outputFile));
+        }
+        logCacheStats(cache);
+        logXPathStats();
+        printStats(printStats);
+    }
+
+    /**
+     * Runs the provided jobs concurrently against the same input schema, which is read and indexed
+     * only once. The types graph is shared, so the types closures are computed once for all jobs.
+     * If requested, each produced schema is validated once written.
+     */
+    static void runJobs(List<ConversionJob> jobs, String filePath, boolean validate) {
+        ForkJoinPool pool = getPool();
+        SchemaTypes schemaTypes = readSchemaTypes(filePath);
+        TypeGraph typeGraph = new TypeGraph(schemaTypes);
+        // jobs with the same target namespace share the same cache
+        Map<QName, ConversionCache> caches = new HashMap<>();
+        for (ConversionJob job : jobs) {
+            caches.computeIfAbsent(job.getTargetNamespace(), Main::getCache);
+        }
+        int threads = Math.min(jobs.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<long[]>> results = new ArrayList<>();
         try {
-            // if is a directory, merge schema files
-            if (checkIfIsDirectory(filePath)) {
-                // save a merged document from all .xsd files on directory
-                List<Document> docs = loadXsdDocumentFromDirectory(filePath);
-                Document mergedDoc =
-                        DocumentsMerger.merge(
-                                docs, "D2LogicalModel", "http://targetnamespace.org/1.0");
-                String result = Utils.documentToString(mergedDoc);
-                mergeTempFile = new File(filePath, "merged");
-                FileUtils.writeStringToFile(mergeTempFile, result, StandardCharsets.UTF_8);
-                // swap filePath to merged file
-                filePath = mergeTempFile.getAbsolutePath();
+            for (ConversionJob job : jobs) {
+                results.add(
+                        executor.submit(
+                                () ->
+                                        runJob(
+                                                job,
+                                                schemaTypes,
+                                                typeGraph,
+                                                pool,
+                                                caches.get(job.getTargetNamespace()),
+                                                validate)));
             }
-            // build default path
-            String defaultPath;
-            if (mergeTempFile != null) {
-                defaultPath =
-                        mergeTempFile.getAbsolutePath()
-                                + File.separator
-                                + "convertedSchema"
-                                + File.separator
-                                + "gmlSchema.xsd.converted";
-            } else {
-                defaultPath = filePath + ".converted";
+            // wait for all the jobs, a failed job doesn't stop the others
+            StringBuilder summary = new StringBuilder("Jobs summary:");
+            int failed = 0;
+            for (int i = 0; i < jobs.size(); i++) {
+                summary.append(String.format("%n  [%d] %s: ", i + 1, jobs.get(i)));
+                try {
+                    long[] timings = results.get(i).get();
+                    summary.append(
+                            String.format(
+                                    "walk %d ms, convert %d ms, total %d ms",
+                                    timings[0], timings[1], timings[0] + timings[1]));
+                } catch (ExecutionException exception) {
+                    failed++;
+                    summary.append("failed, ").append(exception.getCause().getMessage());
+                    LOGGER.log(
+                            Level.SEVERE,
+                            String.format("Job '%s' failed.", jobs.get(i)),
+                            exception.getCause());
+                }
+            }
+            summary.append(
+                    String.format(
+                            "%n  %d jobs completed in %d ms.",
+                            jobs.size() - failed,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            LOGGER.info(summary.toString());
+            caches.values().forEach(Main::logCacheStats);
+            logXPathStats();
+            if (failed > 0) {
+                throw new RuntimeException(
+                        String.format("%d of %d jobs failed.", failed, jobs.size()));
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the jobs.", exception);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts a local conversion server with the provided input schemas, each schema is named after
+     * its file name without the extension. The server runs until the JVM is stopped.
+     */
+    private static void serve(int port, List<String> filesPaths) throws IOException {
+        Map<String, SchemaTypes> schemas = new LinkedHashMap<>();
+        for (String filePath : filesPaths) {
+            String name = FilenameUtils.getBaseName(new File(filePath).getAbsolutePath());
+            if (schemas.put(name, readSchemaTypes(filePath)) != null) {
+                throw new IllegalArgumentException(
+                        String.format("Schema name '%s' is used by more than one schema.", name));
+            }
+        }
+        ConversionServer server = new ConversionServer(port, schemas, getPool(), Main::getCache);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+
+    /** Writes the target elements missing in the origin to the report file or to the console. */
+    private static void diff(File origin, File target, String reportFile) throws IOException {
+        long start = System.nanoTime();
+        try (Writer report =
+                new BufferedWriter(
+                        new OutputStreamWriter(
+                                reportFile == null
+                                        ? new CloseShieldOutputStream(System.out)
+                                        : new FileOutputStream(reportFile),
+                                StandardCharsets.UTF_8))) {
+            StreamingGmlDiff.compare(origin, target, report);
+        }
+        logStage("diff", start);
+    }
+
+    /** Runs a single job, returns the walk and the conversion times in milliseconds. */
+    private static long[] runJob(
+            ConversionJob job,
+            SchemaTypes schemaTypes,
+            TypeGraph typeGraph,
+            ForkJoinPool pool,
+            ConversionCache cache,
+            boolean validate)
+            throws IOException {
+        long start = System.nanoTime();
+        Xsd2Gml converter =
+                new Xsd2Gml(
+                        schemaTypes,
+                        typeGraph,
+                        job.getTargetNamespace(),
+                        job.getRootTypes(),
+                        pool,
+                        cache);
+        long walk = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        start = System.nanoTime();
+        convert(converter, job.getTargetNamespace(), job.getOutput());
+        long convert = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (validate) {
+            validate(job.getOutput());
+        }
+        return new long[] {walk, convert};
+    }
+
+    /** Reads the input schema, if a directory is provided all its schemas are merged. */
+    private static SchemaTypes readSchemaTypes(String filePath) {
+        long start = System.nanoTime();
+        if (!checkIfIsDirectory(filePath) && Boolean.getBoolean(FOLLOW_IMPORTS_PROP)) {
+            // same types of the merge of the reachable schemas
+            SchemaTypes schemaTypes =
+                    new LazySchemaTypes(
+                            new File(filePath), "D2LogicalModel", "http://targetnamespace.org/1.0");
+            logStage("read", start);
+            ConversionStats.get().recordPhase(ConversionStats.READ, start);
+            return schemaTypes;
+        }
+        if (checkIfIsDirectory(filePath) && Boolean.getBoolean(STREAMING_MERGE_PROP)) {
+            return readStreamingMerge(filePath);
+        }
+        if (checkIfIsDirectory(filePath)) {
+            // merge all .xsd files on directory in a single document
+            List<Document> docs = loadXsdDocumentFromDirectory(filePath);
+            logStage("read", start);
+            ConversionStats.get().recordPhase(ConversionStats.READ, start);
+            start = System.nanoTime();
+            Document mergedDoc =
+                    DocumentsMerger.merge(docs, "D2LogicalModel", "http://targetnamespace.org/1.0");
+            SchemaIndex schemaIndex = new SchemaIndex(mergedDoc);
+            logStage("merge", start);
+            ConversionStats.get().recordPhase(ConversionStats.MERGE, start);
+            return schemaIndex;
+        }
+        SchemaTypes schemaTypes;
+        if (Boolean.getBoolean(STAX_READER_PROP)) {
+            schemaTypes = SchemaModelReader.read(filePath);
+        } else {
+            schemaTypes = new SchemaIndex(Utils.readDocument(filePath));
+        }
+        logStage("read", start);
+        ConversionStats.get().recordPhase(ConversionStats.READ, start);
+        return schemaTypes;
+    }
+
+    /**
+     * Merges the schemas of the provided directory to a temporary file, one file at the time, and
+     * reads the merged schema from it.
+     */
+    private static SchemaTypes readStreamingMerge(String dirPath) {
+        long start = System.nanoTime();
+        File merged = null;
+        try {
+            merged = File.createTempFile("merged", ".xsd");
+            try (OutputStream output = new BufferedOutputStream(new FileOutputStream(merged))) {
+                StreamingDocumentsMerger.merge(
+                        listXsdFiles(dirPath),
+                        "D2LogicalModel",
+                        "http://targetnamespace.org/1.0",
+                        output);
             }
-            // ask to user output file
-            String outputFile;
-            if (args.length < 5) {
-                outputFile = defaultPath;
+            logStage("merge", start);
+            ConversionStats.get().recordPhase(ConversionStats.MERGE, start);
+            start = System.nanoTime();
+            SchemaTypes schemaTypes;
+            if (Boolean.getBoolean(STAX_READER_PROP)) {
+                schemaTypes = SchemaModelReader.read(merged.getPath());
             } else {
-                outputFile = args[4];
+                schemaTypes = new SchemaIndex(Utils.readDocument(merged.getPath()));
             }
-            convertSingleFile(args, filePath, outputFile);
+            logStage("read", start);
+            ConversionStats.get().recordPhase(ConversionStats.READ, start);
+            return schemaTypes;
+        } catch (IOException exception) {
+            throw new RuntimeException(
+                    String.format("Error merging the schemas of directory '%s'.", dirPath),
+                    exception);
         } finally {
-            // clean merge file if was used
-            if (mergeTempFile != null) {
-                mergeTempFile.delete();
+            if (merged != null && !merged.delete()) {
+                merged.deleteOnExit();
             }
         }
     }
 
+    /**
+     * Validates a produced schema, the GML schemas are resolved from the configured catalog
+     * directory or from the bundled catalog. They are compiled once, the first time, and each
+     * produced schema is compiled against them.
+     */
+    private static void validate(File schema) {
+        String catalogDirectory = System.getProperty(CATALOG_DIR_PROP);
+        GmlSchemaValidator.get(catalogDirectory == null ? null : new File(catalogDirectory))
+                .validate(schema);
+    }
+
+    private static ForkJoinPool getPool() {
+        return Boolean.getBoolean(PARALLEL_PROP) ? ForkJoinPool.commonPool() : null;
+    }
+
+    /**
+     * Returns the conversion cache, NULL if no cache directory was configured. If a target
+     * namespace is provided the cache is stored in its own sub directory.
+     */
+    private static ConversionCache getCache(QName targetNamespace) {
+        String cacheDirectory = System.getProperty(CACHE_DIR_PROP);
+        if (cacheDirectory == null) {
+            return null;
+        }
+        File directory = new File(cacheDirectory);
+        if (targetNamespace != null) {
+            directory = getCacheDirectory(directory, targetNamespace);
+        }
+        return new ConversionCache(directory);
+    }
+
+    /**
+     * The cache sub directory of a target namespace, named after its prefix and the hash of its
+     * URI, so jobs with the same prefix and different namespaces never share a directory.
+     */
+    static File getCacheDirectory(File cacheDirectory, QName targetNamespace) {
+        return new File(
+                cacheDirectory,
+                targetNamespace.getPrefix()
+                        + "-"
+                        + TypeHasher.hash(targetNamespace.getNamespaceURI()).substring(0, 16));
+    }
+
+    private static void logCacheStats(ConversionCache cache) {
+        if (cache != null) {
+            LOGGER.info(
+                    String.format(
+                            "Conversion cache: %d hits, %d misses, %d invalidations.",
+                            cache.getHits(), cache.getMisses(), cache.getInvalidations()));
+        }
+    }
+
+    private static void logXPathStats() {
+        LOGGER.info(
+                String.format(
+                        "XPath expressions cache: %d hits, %d misses.",
+                        XPathEngine.getCacheHits(), XPathEngine.getCacheMisses()));
+    }
+
+    private static void convert(Xsd2Gml converter, QName targetNamespace, File out)
+            throws IOException {
+        FileUtils.forceMkdirParent(out);
+        long start = System.nanoTime();
+        if (Boolean.parseBoolean(System.getProperty(ADD_EXTRAS_PROP, "true"))) {
+            Document gmlSchema = converter.getPrefixedGmlSchema();
+            logStage("convert", start);
+            // add gml extras to the converted schema
+            start = System.nanoTime();
+            Document result = addGmlExtras(gmlSchema, targetNamespace.getPrefix());
+            logStage("extras", start);
+            start = System.nanoTime();
+            try (CountingOutputStream output = newOutputStream(out)) {
+                Utils.writeDocument(result, output);
+                output.flush();
+                ConversionStats.get().bytesWritten(output.getByteCount());
+            }
+            logStage("write", start);
+            ConversionStats.get().recordPhase(ConversionStats.SERIALIZATION, start);
+        } else {
+            // no extras, the converted types can be streamed directly to the output file
+            try (CountingOutputStream output = newOutputStream(out)) {
+                converter.write(output);
+                output.flush();
+                ConversionStats.get().bytesWritten(output.getByteCount());
+            }
+            logStage("convert and write", start);
+        }
+    }
+
+    /** Buffered output stream to the provided file counting the written bytes. */
+    private static CountingOutputStream newOutputStream(File out) throws IOException {
+        return new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+    }
+
+    private static void printStats(boolean printStats) {
+        if (printStats) {
+            System.out.println(ConversionStats.get().getJson());
+        }
+    }
+
+    private static void logStage(String stage, long start) {
+        LOGGER.info(
+                String.format(
+                        "Stage '%s' completed in %d ms.",
+                        stage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * Reads concurrently all the schemas in the provided directory, the documents are returned
+     * sorted by file name so they are always merged in the same order.
+     */
     static List<Document> loadXsdDocumentFromDirectory(String dirPath) {
-        File dir = new File(dirPath);
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".xsd"));
-        List<Document> documents = new ArrayList<>();
-        for (File ef : files) {
-            try {
-                Document document = Utils.readDocument(new FileInputStream(ef));
-                documents.add(document);
-            } catch (FileNotFoundException e) {
-                LOGGER.log(Level.WARNING, e.getMessage(), e);
+        List<File> files = listXsdFiles(dirPath);
+        if (files.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Document>> results = new ArrayList<>();
+            for (File ef : files) {
+                results.add(executor.submit(() -> loadXsdDocument(ef)));
             }
+            List<Document> documents = new ArrayList<>();
+            for (Future<Document> result : results) {
+                Document document = result.get();
+                if (document != null) {
+                    documents.add(document);
+                }
+            }
+            return documents;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading the schemas files.", exception);
+        } catch (ExecutionException exception) {
+            // parsing errors are reported as they are
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw new RuntimeException(exception.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** The schemas files of the provided directory sorted by name. */
+    private static List<File> listXsdFiles(String dirPath) {
+        File[] files = new File(dirPath).listFiles((d, name) -> name.endsWith(".xsd"));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /** Reads a schema file, returns NULL if the file can't be opened. */
+    private static Document loadXsdDocument(File file) {
+        long start = System.nanoTime();
+        try (InputStream input = new FileInputStream(file)) {
+            Document document = Utils.readDocument(input);
+            LOGGER.info(
+                    String.format(
+                            "Schema file '%s' read in %d ms.",
+                            file.getName(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            return document;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+            return null;
         }
-        return documents;
     }
 
     static boolean checkIfIsDirectory(String filePath) {
@@ -92,36 +521,16 @@ public class Main {
         return file.isDirectory();
     }
 
-    private static void convertSingleFile(String[] args, String filePath, String outFilePath)
-            throws IOException {
-        Document document = Utils.readDocument(filePath);
-        List<String> rootTypes = Arrays.asList(args[1].split(","));
-        QName targetNamespace = new QName(args[3], args[2], args[2]);
-        Xsd2Gml converter = new Xsd2Gml(document, targetNamespace, rootTypes);
-        String result =
-                Utils.documentToStringNpraPrefixed(
-                        converter.getGmlSchema(), targetNamespace.getPrefix());
-        // add gml extras if it's required
-        result = addGmlExtras(result, targetNamespace.getPrefix());
-        File out = new File(outFilePath);
-        FileUtils.writeStringToFile(out, result, StandardCharsets.UTF_8);
+    static String addGmlExtras(String documentText, String targetPrefix) {
+        Document inputDocument = GmlDiff.documentFromText(documentText);
+        return Utils.documentToString(addGmlExtras(inputDocument, targetPrefix));
     }
 
-    static String addGmlExtras(String documentText, String targetPrefix) {
-        try {
-            Document inputDocument = GmlDiff.documentFromText(documentText);
-            InputStream resourceAsStream =
-                    Main.class.getClassLoader().getResourceAsStream("datex_2.3_gml.xsd");
-            Document targetDocument = GmlDiff.documentFromInputStream(resourceAsStream);
-            InputStream diffFileStream =
-                    Main.class.getClassLoader().getResourceAsStream("report.txt");
-            String diffText = IOUtils.toString(diffFileStream, StandardCharsets.UTF_8);
-            DiffApplier diffApplier =
-                    new DiffApplier(inputDocument, targetDocument, diffText, targetPrefix);
-            Document resultDocument = diffApplier.applyDifferences();
-            return Utils.documentToString(resultDocument);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    /** Applies the GML extras to the provided namespace aware schema, which will be modified. */
+    static Document addGmlExtras(Document inputDocument, String targetPrefix) {
+        // the precompiled patch is loaded once and reused
+        DiffApplier diffApplier =
+                new DiffApplier(inputDocument, GmlExtrasPatch.get(), targetPrefix);
+        return diffApplier.applyDifferences();
     }
 }
@@ -0,0 +1,225 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.SchemaNavigator.getAttributeElements;
+import static it.geosolutions.xsd2gml.SchemaNavigator.getChildren;
+import static it.geosolutions.xsd2gml.SchemaNavigator.getDocumentationElements;
+import static it.geosolutions.xsd2gml.SchemaNavigator.getExtensionElements;
+import static it.geosolutions.xsd2gml.SchemaNavigator.getPropertyElements;
+import static it.geosolutions.xsd2gml.Utils.toElement;
+import static it.geosolutions.xsd2gml.Utils.extractUnqualifiedTypeName;
+import static it.geosolutions.xsd2gml.Utils.localName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Name based symbol table of the top level types declared by a schema. The index is built with a
+ * single pass over the schema root node children, lookups are then simple map accesses instead of
+ * XPath evaluations over the whole schema. This is the DOM based implementation of the schema
+ * types, the indexed DOM should not be modified. DOM reads are not thread safe, so imports are
+ * serialized on the schema document.
+ */
+final class SchemaIndex implements SchemaTypes {
+
+    private final Document schema;
+
+    private final Map<String, Element> complexTypes = new HashMap<>();
+    private final Map<String, Element> simpleTypes = new HashMap<>();
+
+    // super type name of each complex type that extends another type
+    private final Map<String, String> superTypes = new HashMap<>();
+    // complex types with a simple content
+    private final Set<String> simpleContentTypes = new HashSet<>();
+    // names of the complex types indexed by the type they extend
+    private final Map<String, Set<String>> extensions = new HashMap<>();
+
+    SchemaIndex(Document schema) {
+        this.schema = schema;
+        indexTypes();
+    }
+
+    Document getSchema() {
+        return schema;
+    }
+
+    /** Returns the complex type with the provided unqualified name, NULL if it doesn't exist. */
+    Element getComplexType(String unqualifiedTypeName) {
+        return complexTypes.get(unqualifiedTypeName);
+    }
+
+    /** Returns the simple type with the provided unqualified name, NULL if it doesn't exist. */
+    Element getSimpleType(String unqualifiedTypeName) {
+        return simpleTypes.get(unqualifiedTypeName);
+    }
+
+    @Override
+    public boolean isComplexType(String unqualifiedTypeName) {
+        return complexTypes.containsKey(unqualifiedTypeName);
+    }
+
+    @Override
+    public boolean isSimpleType(String unqualifiedTypeName) {
+        return simpleTypes.containsKey(unqualifiedTypeName);
+    }
+
+    @Override
+    public boolean hasSimpleContent(String unqualifiedTypeName) {
+        return simpleContentTypes.contains(unqualifiedTypeName);
+    }
+
+    @Override
+    public String getSuperTypeName(String unqualifiedTypeName) {
+        return superTypes.get(unqualifiedTypeName);
+    }
+
+    @Override
+    public Set<String> getExtensionNames(String unqualifiedTypeName) {
+        return extensions.getOrDefault(unqualifiedTypeName, Collections.emptySet());
+    }
+
+    @Override
+    public List<String> getPropertyTypeNames(String unqualifiedTypeName) {
+        Element complexType = getExistingComplexType(unqualifiedTypeName);
+        List<String> typeNames = new ArrayList<>();
+        // the DOM is also read by the imports, which may run concurrently
+        synchronized (schema) {
+            List<Element> properties = getPropertyElements(complexType);
+            properties.addAll(getAttributeElements(complexType));
+            for (Element property : properties) {
+                String typeName = property.getAttribute("type");
+                if (!typeName.isEmpty()) {
+                    typeNames.add(typeName);
+                }
+            }
+        }
+        return typeNames;
+    }
+
+    @Override
+    public Element importSchemaElement(Document target) {
+        synchronized (schema) {
+            return importNode(target, schema.getDocumentElement(), false);
+        }
+    }
+
+    @Override
+    public Element importComplexType(String unqualifiedTypeName, Document target) {
+        Element complexType = getExistingComplexType(unqualifiedTypeName);
+        synchronized (schema) {
+            return importNode(target, complexType, true);
+        }
+    }
+
+    @Override
+    public Element importSimpleType(String unqualifiedTypeName, Document target) {
+        Element simpleType = simpleTypes.get(unqualifiedTypeName);
+        if (simpleType == null) {
+            throw new RuntimeException(
+                    String.format("Definition for type '%s' not found.", unqualifiedTypeName));
+        }
+        synchronized (schema) {
+            return importNode(target, simpleType, true);
+        }
+    }
+
+    @Override
+    public List<Element> importDocumentation(String unqualifiedTypeName, Document target) {
+        Element complexType = getExistingComplexType(unqualifiedTypeName);
+        synchronized (schema) {
+            return importAll(getDocumentationElements(complexType), target);
+        }
+    }
+
+    @Override
+    public List<Element> importAttributes(String unqualifiedTypeName, Document target) {
+        Element complexType = getExistingComplexType(unqualifiedTypeName);
+        synchronized (schema) {
+            return importAll(getAttributeElements(complexType), target);
+        }
+    }
+
+    @Override
+    public List<Element> importProperties(String unqualifiedTypeName, Document target) {
+        Element complexType = getExistingComplexType(unqualifiedTypeName);
+        synchronized (schema) {
+            return importAll(getPropertyElements(complexType), target);
+        }
+    }
+
+    private Element getExistingComplexType(String unqualifiedTypeName) {
+        Element complexType = complexTypes.get(unqualifiedTypeName);
+        if (complexType == null) {
+            throw new RuntimeException(
+                    String.format("Definition for type '%s' not found.", unqualifiedTypeName));
+        }
+        return complexType;
+    }
+
+    private static List<Element> importAll(List<Element> elements, Document target) {
+        List<Element> imported = new ArrayList<>(elements.size());
+        for (Element element : elements) {
+            imported.add(importNode(target, element, true));
+        }
+        return imported;
+    }
+
+    private static Element importNode(Document target, Element element, boolean deep) {
+        ConversionStats.get().nodesImported(1);
+        return toElement(target.importNode(element, deep));
+    }
+
+    private void indexTypes() {
+        Element root = schema.getDocumentElement();
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!(node instanceof Element)) {
+                continue;
+            }
+            Element element = (Element) node;
+            String kind = localName(element);
+            if ("complexType".equals(kind)) {
+                indexComplexType(element);
+            } else if ("simpleType".equals(kind)) {
+                // the first definition wins, as it was with the XPath based lookup
+                simpleTypes.putIfAbsent(element.getAttribute("name"), element);
+            }
+        }
+    }
+
+    private void indexComplexType(Element complexType) {
+        String name = complexType.getAttribute("name");
+        if (complexTypes.putIfAbsent(name, complexType) != null) {
+            // duplicated definition, only the first one is used
+            return;
+        }
+        if (!getChildren(complexType, "simpleContent").isEmpty()) {
+            simpleContentTypes.add(name);
+        }
+        // get the extension node of this complex type
+        List<Element> foundExtensions = getExtensionElements(complexType);
+        if (foundExtensions.isEmpty()) {
+            return;
+        }
+        if (foundExtensions.size() != 1) {
+            // strange situation, we don't support this
+            throw new RuntimeException("Complex type has more than one child extension node.");
+        }
+        // get the super type name
+        String superTypeName = extractUnqualifiedTypeName(foundExtensions.get(0), "base");
+        superTypes.put(name, superTypeName);
+        if (superTypeName == null || superTypeName.isEmpty()) {
+            // strange but no base attribute available or empty, let's move on
+            return;
+        }
+        // index this extension to its super type
+        extensions.computeIfAbsent(superTypeName, key -> new HashSet<>()).add(name);
+    }
+}
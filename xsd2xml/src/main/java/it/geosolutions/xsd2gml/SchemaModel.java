@@ -0,0 +1,201 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.Utils.unQualifyName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Immutable model of the top level types of an input schema, only the complex and simple types
+ * definitions are retained. This is a lighter alternative to the DOM based schema index, the model
+ * is safe to share between threads. Instances are created by {@link SchemaModelReader}.
+ */
+final class SchemaModel implements SchemaTypes {
+
+    private final XmlNode schemaElement;
+
+    private final Map<String, XmlNode> complexTypes = new HashMap<>();
+    private final Map<String, XmlNode> simpleTypes = new HashMap<>();
+
+    private final Map<String, String> superTypes = new HashMap<>();
+    private final Set<String> simpleContentTypes = new HashSet<>();
+    private final Map<String, Set<String>> extensions = new HashMap<>();
+
+    /**
+     * Builds the model from the schema root element, without children, and the top level types
+     * definitions in document order.
+     */
+    SchemaModel(XmlNode schemaElement, List<XmlNode> typesDefinitions) {
+        this.schemaElement = schemaElement;
+        for (XmlNode definition : typesDefinitions) {
+            if ("complexType".equals(definition.getLocalName())) {
+                indexComplexType(definition);
+            } else if ("simpleType".equals(definition.getLocalName())) {
+                // the first definition wins, as it happens with the DOM index
+                simpleTypes.putIfAbsent(definition.getAttribute("name"), definition);
+            }
+        }
+        // extensions sets will not change anymore
+        extensions.replaceAll((name, names) -> Collections.unmodifiableSet(names));
+    }
+
+    /** Number of complex and simple types in this model. */
+    int size() {
+        return complexTypes.size() + simpleTypes.size();
+    }
+
+    @Override
+    public boolean isComplexType(String unqualifiedTypeName) {
+        return complexTypes.containsKey(unqualifiedTypeName);
+    }
+
+    @Override
+    public boolean isSimpleType(String unqualifiedTypeName) {
+        return simpleTypes.containsKey(unqualifiedTypeName);
+    }
+
+    @Override
+    public boolean hasSimpleContent(String unqualifiedTypeName) {
+        return simpleContentTypes.contains(unqualifiedTypeName);
+    }
+
+    @Override
+    public String getSuperTypeName(String unqualifiedTypeName) {
+        return superTypes.get(unqualifiedTypeName);
+    }
+
+    @Override
+    public Set<String> getExtensionNames(String unqualifiedTypeName) {
+        return extensions.getOrDefault(unqualifiedTypeName, Collections.emptySet());
+    }
+
+    @Override
+    public List<String> getPropertyTypeNames(String unqualifiedTypeName) {
+        XmlNode complexType = getExistingComplexType(unqualifiedTypeName);
+        List<XmlNode> properties = getPropertyNodes(complexType);
+        properties.addAll(complexType.getChildren("attribute"));
+        List<String> typeNames = new ArrayList<>();
+        for (XmlNode property : properties) {
+            String typeName = property.getAttribute("type");
+            if (!typeName.isEmpty()) {
+                typeNames.add(typeName);
+            }
+        }
+        return typeNames;
+    }
+
+    @Override
+    public Element importSchemaElement(Document target) {
+        ConversionStats.get().nodesImported(1);
+        return schemaElement.toElement(target, false);
+    }
+
+    @Override
+    public Element importComplexType(String unqualifiedTypeName, Document target) {
+        ConversionStats.get().nodesImported(1);
+        return getExistingComplexType(unqualifiedTypeName).toElement(target, true);
+    }
+
+    @Override
+    public Element importSimpleType(String unqualifiedTypeName, Document target) {
+        XmlNode simpleType = simpleTypes.get(unqualifiedTypeName);
+        if (simpleType == null) {
+            throw new RuntimeException(
+                    String.format("Definition for type '%s' not found.", unqualifiedTypeName));
+        }
+        ConversionStats.get().nodesImported(1);
+        return simpleType.toElement(target, true);
+    }
+
+    @Override
+    public List<Element> importDocumentation(String unqualifiedTypeName, Document target) {
+        List<XmlNode> documentation = new ArrayList<>();
+        for (XmlNode annotation :
+                getExistingComplexType(unqualifiedTypeName).getChildren("annotation")) {
+            documentation.addAll(annotation.getChildren("documentation"));
+        }
+        return toElements(documentation, target);
+    }
+
+    @Override
+    public List<Element> importAttributes(String unqualifiedTypeName, Document target) {
+        return toElements(
+                getExistingComplexType(unqualifiedTypeName).getChildren("attribute"), target);
+    }
+
+    @Override
+    public List<Element> importProperties(String unqualifiedTypeName, Document target) {
+        return toElements(getPropertyNodes(getExistingComplexType(unqualifiedTypeName)), target);
+    }
+
+    private void indexComplexType(XmlNode complexType) {
+        String name = complexType.getAttribute("name");
+        if (complexTypes.putIfAbsent(name, complexType) != null) {
+            // duplicated definition, only the first one is used
+            return;
+        }
+        List<XmlNode> foundExtensions = new ArrayList<>();
+        for (XmlNode child : complexType.getChildren()) {
+            if ("simpleContent".equals(child.getLocalName())) {
+                simpleContentTypes.add(name);
+            }
+            foundExtensions.addAll(child.getChildren("extension"));
+        }
+        if (foundExtensions.isEmpty()) {
+            return;
+        }
+        if (foundExtensions.size() != 1) {
+            // strange situation, we don't support this
+            throw new RuntimeException("Complex type has more than one child extension node.");
+        }
+        String superTypeName = unQualifyName(foundExtensions.get(0).getAttribute("base"));
+        superTypes.put(name, superTypeName);
+        if (!superTypeName.isEmpty()) {
+            extensions.computeIfAbsent(superTypeName, key -> new HashSet<>()).add(name);
+        }
+    }
+
+    private XmlNode getExistingComplexType(String unqualifiedTypeName) {
+        XmlNode complexType = complexTypes.get(unqualifiedTypeName);
+        if (complexType == null) {
+            throw new RuntimeException(
+                    String.format("Definition for type '%s' not found.", unqualifiedTypeName));
+        }
+        return complexType;
+    }
+
+    /** Same nodes of the XPath <code>*&#47;/element</code>, in document order. */
+    private static List<XmlNode> getPropertyNodes(XmlNode complexType) {
+        List<XmlNode> found = new ArrayList<>();
+        for (XmlNode child : complexType.getChildren()) {
+            collectElements(child, found);
+        }
+        return found;
+    }
+
+    private static void collectElements(XmlNode parent, List<XmlNode> found) {
+        for (XmlNode child : parent.getChildren()) {
+            if ("element".equals(child.getLocalName())) {
+                found.add(child);
+            }
+            collectElements(child, found);
+        }
+    }
+
+    private static List<Element> toElements(List<XmlNode> nodes, Document target) {
+        ConversionStats.get().nodesImported(nodes.size());
+        List<Element> elements = new ArrayList<>(nodes.size());
+        for (XmlNode node : nodes) {
+            elements.add(node.toElement(target, true));
+        }
+        return elements;
+    }
+}
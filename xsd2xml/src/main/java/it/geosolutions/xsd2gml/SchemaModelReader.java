@@ -0,0 +1,186 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads an XML schema with StAX building a {@link SchemaModel}. Only the top level complex and
+ * simple types are retained, names and attributes values are shared between nodes and whitespace
+ * is dropped, so the produced model uses a fraction of the memory of the equivalent DOM.
+ */
+final class SchemaModelReader {
+
+    // shared instances of the elements names and attributes names and values
+    private final Map<String, String> names = new HashMap<>();
+    // prefix the base, name, type and ref values are translated to, NULL to keep them
+    private final String targetPrefix;
+
+    private SchemaModelReader(String targetPrefix) {
+        this.targetPrefix = targetPrefix;
+    }
+
+    static SchemaModel read(String filePath) {
+        return read(filePath, null);
+    }
+
+    /**
+     * Reads the schema translating the prefixes of the base, name, type and ref attributes to the
+     * provided prefix, as {@link DocumentsMerger} does when merging schemas.
+     */
+    static SchemaModel read(String filePath, String targetPrefix) {
+        try (InputStream input = new FileInputStream(filePath)) {
+            return read(input, targetPrefix);
+        } catch (Exception exception) {
+            throw new RuntimeException(
+                    String.format(
+                            "file '%s' does not exists or have errors, "
+                                    + "please check if you are using the correct filesystem path"
+                                    + " or check possible XML errors: \n"
+                                    + exception.getMessage(),
+                            filePath),
+                    exception);
+        }
+    }
+
+    static SchemaModel read(InputStream input) {
+        return read(input, null);
+    }
+
+    private static SchemaModel read(InputStream input, String targetPrefix) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlSupport.createNamespaceAwareStreamReader(input);
+            return new SchemaModelReader(targetPrefix).readSchema(reader);
+        } catch (XMLStreamException exception) {
+            throw new RuntimeException(
+                    "Error reading XML schema from the input stream.", exception);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private SchemaModel readSchema(XMLStreamReader reader) throws XMLStreamException {
+        // move to the schema root element
+        reader.nextTag();
+        XmlNode schemaElement = newNode(reader);
+        List<XmlNode> definitions = new ArrayList<>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String localName = reader.getLocalName();
+            if ("complexType".equals(localName) || "simpleType".equals(localName)) {
+                definitions.add(readElement(reader));
+            } else {
+                // not needed by the conversion
+                skipElement(reader);
+            }
+        }
+        return new SchemaModel(schemaElement, definitions);
+    }
+
+    /** Reads the current element and its sub tree, the reader will be on the end element. */
+    private XmlNode readElement(XMLStreamReader reader) throws XMLStreamException {
+        // attributes need to be read before moving forward
+        XmlNode attributesOnly = newNode(reader);
+        List<XmlNode> children = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                children.add(readElement(reader));
+            } else if (event == XMLStreamConstants.CHARACTERS
+                    || event == XMLStreamConstants.CDATA) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        String content = text.toString().trim().isEmpty() ? null : text.toString();
+        return attributesOnly.withContent(children, content);
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /** Creates a node with the name and attributes of the current element but no content. */
+    private XmlNode newNode(XMLStreamReader reader) {
+        int namespacesCount = reader.getNamespaceCount();
+        int attributesCount = reader.getAttributeCount();
+        int size = namespacesCount + attributesCount;
+        String[] attributesNames = new String[size];
+        String[] attributesNamespaces = new String[size];
+        String[] attributesValues = new String[size];
+        // namespaces declarations are retained as attributes
+        for (int i = 0; i < namespacesCount; i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            attributesNames[i] =
+                    name(
+                            prefix == null || prefix.isEmpty()
+                                    ? XMLConstants.XMLNS_ATTRIBUTE
+                                    : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix);
+            attributesNamespaces[i] = XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            attributesValues[i] = reader.getNamespaceURI(i);
+        }
+        for (int i = 0; i < attributesCount; i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String localName = reader.getAttributeLocalName(i);
+            String namespace = reader.getAttributeNamespace(i);
+            int index = namespacesCount + i;
+            attributesNames[index] =
+                    name(prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName);
+            attributesNamespaces[index] =
+                    namespace == null || namespace.isEmpty() ? null : namespace;
+            String value = reader.getAttributeValue(i);
+            if (targetPrefix != null && (prefix == null || prefix.isEmpty())) {
+                value = DocumentsMerger.translatePrefix(localName, value, targetPrefix);
+            }
+            attributesValues[index] = name(value);
+        }
+        String prefix = reader.getPrefix();
+        String localName = reader.getLocalName();
+        String namespace = reader.getNamespaceURI();
+        return new XmlNode(
+                namespace == null || namespace.isEmpty() ? null : namespace,
+                name(prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName),
+                name(localName),
+                attributesNames,
+                attributesNamespaces,
+                attributesValues,
+                Collections.emptyList(),
+                null);
+    }
+
+    /** Returns the shared instance of the provided name or value. */
+    private String name(String name) {
+        String shared = names.putIfAbsent(name, name);
+        return shared == null ? name : shared;
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (Exception exception) {
+            // nothing we can do about it
+        }
+    }
+}
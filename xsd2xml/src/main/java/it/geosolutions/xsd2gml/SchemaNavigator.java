@@ -0,0 +1,94 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.Utils.localName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Typed navigation over the few relative paths used during the conversion of a complex type. The
+ * paths are answered by iterating directly over the DOM children and descendants, which avoids
+ * building an XPath context and an intermediate node list for each evaluation. Elements are
+ * matched by local name so both namespace aware and non namespace aware documents are supported,
+ * results are returned in document order like the equivalent XPath.
+ */
+final class SchemaNavigator {
+
+    private SchemaNavigator() {}
+
+    /** Equivalent to the XPath <code>*&#47;/element</code>, the properties of a complex type. */
+    static List<Element> getPropertyElements(Element complexType) {
+        List<Element> found = new ArrayList<>();
+        for (Node child = complexType.getFirstChild();
+                child != null;
+                child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                collectDescendants((Element) child, "element", found);
+            }
+        }
+        return found;
+    }
+
+    /** Equivalent to the XPath {@code attribute}. */
+    static List<Element> getAttributeElements(Element complexType) {
+        return getChildren(complexType, "attribute");
+    }
+
+    /** Equivalent to the XPath {@code annotation/documentation}. */
+    static List<Element> getDocumentationElements(Element complexType) {
+        List<Element> found = new ArrayList<>();
+        for (Element annotation : getChildren(complexType, "annotation")) {
+            found.addAll(getChildren(annotation, "documentation"));
+        }
+        return found;
+    }
+
+    /** Equivalent to the XPath <code>*&#47;extension</code>. */
+    static List<Element> getExtensionElements(Element complexType) {
+        List<Element> found = new ArrayList<>();
+        for (Node child = complexType.getFirstChild();
+                child != null;
+                child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                found.addAll(getChildren((Element) child, "extension"));
+            }
+        }
+        return found;
+    }
+
+    /** Returns the child elements of the provided parent with the provided local name. */
+    static List<Element> getChildren(Element parent, String localName) {
+        List<Element> found = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && localName.equals(localName(child))) {
+                found.add((Element) child);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Collects in document order all the descendants, excluding the root itself, of the provided
+     * root element with the provided local name. The tree is walked without recursion.
+     */
+    private static void collectDescendants(Element root, String localName, List<Element> found) {
+        Node current = root.getFirstChild();
+        while (current != null) {
+            if (current instanceof Element && localName.equals(localName(current))) {
+                found.add((Element) current);
+            }
+            // move to the next node in document order without leaving the root sub tree
+            if (current.getFirstChild() != null) {
+                current = current.getFirstChild();
+                continue;
+            }
+            while (current != null && current != root && current.getNextSibling() == null) {
+                current = current.getParentNode();
+            }
+            current = current == null || current == root ? null : current.getNextSibling();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package it.geosolutions.xsd2gml;
+
+import java.util.List;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * The facts about the top level types of an input schema needed to walk and convert it. Types are
+ * identified by their unqualified name. The import methods return deep copies of the requested
+ * definitions owned by the provided target document, ready to be modified and appended to it.
+ * Imports into different target documents may happen concurrently.
+ */
+interface SchemaTypes {
+
+    boolean isComplexType(String unqualifiedTypeName);
+
+    boolean isSimpleType(String unqualifiedTypeName);
+
+    /** Returns TRUE if the provided name is a complex type with a simple content. */
+    boolean hasSimpleContent(String unqualifiedTypeName);
+
+    /**
+     * Returns the unqualified name of the type the provided complex type extends, this will be NULL
+     * or an empty string if the complex type doesn't extend any type.
+     */
+    String getSuperTypeName(String unqualifiedTypeName);
+
+    /** Returns the names of the complex types that directly extend the provided type. */
+    Set<String> getExtensionNames(String unqualifiedTypeName);
+
+    /**
+     * Returns the values of the type attribute, possibly qualified, of the properties and
+     * attributes declared by the provided complex type. Declarations without a type are skipped.
+     */
+    List<String> getPropertyTypeNames(String unqualifiedTypeName);
+
+    /** Copies the schema root node, without its children, to the target document. */
+    Element importSchemaElement(Document target);
+
+    Element importComplexType(String unqualifiedTypeName, Document target);
+
+    Element importSimpleType(String unqualifiedTypeName, Document target);
+
+    /** Copies the documentation elements of the provided complex type. */
+    List<Element> importDocumentation(String unqualifiedTypeName, Document target);
+
+    /** Copies the attributes declarations of the provided complex type. */
+    List<Element> importAttributes(String unqualifiedTypeName, Document target);
+
+    /** Copies the properties (elements declarations) of the provided complex type. */
+    List<Element> importProperties(String unqualifiedTypeName, Document target);
+}
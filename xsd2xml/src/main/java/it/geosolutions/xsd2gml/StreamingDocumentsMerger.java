@@ -0,0 +1,183 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streaming version of {@link DocumentsMerger}, the top level children of each schema file are
+ * copied with StAX to the merged schema, and the prefixes of the base, name, type and ref
+ * attributes are translated while copying. Only the current event of the current file is kept in
+ * memory. Files are read without namespaces, like the DOM merger does, so elements and attributes
+ * are copied with their qualified names as they are.
+ */
+final class StreamingDocumentsMerger {
+
+    private static final Logger LOGGER = Logger.getLogger(StreamingDocumentsMerger.class.getName());
+
+    private final String targetPrefix;
+    private final String targetNamespaceURI;
+    private final Set<String> typesSet = new HashSet<>();
+
+    private StreamingDocumentsMerger(String targetPrefix, String targetNamespaceURI) {
+        this.targetPrefix = targetPrefix;
+        this.targetNamespaceURI = targetNamespaceURI;
+    }
+
+    /** Writes to the output the merge of the provided schemas files, in the provided order. */
+    static void merge(
+            List<File> files, String targetPrefix, String targetNamespaceURI, OutputStream output) {
+        StreamingDocumentsMerger merger =
+                new StreamingDocumentsMerger(targetPrefix, targetNamespaceURI);
+        XMLStreamWriter writer = null;
+        try {
+            writer = XmlSupport.createStreamWriter(output);
+            merger.writeStart(writer);
+            for (File file : files) {
+                merger.process(file, writer);
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException exception) {
+            throw new RuntimeException("Error writing the merged schema.", exception);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (XMLStreamException exception) {
+                    // nothing we can do about it
+                }
+            }
+        }
+    }
+
+    /** Same root element, and blank text, of the DOM merger. */
+    private void writeStart(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+        writer.writeStartElement("xs:schema");
+        writer.writeAttribute("xmlns:" + targetPrefix, targetNamespaceURI);
+        writer.writeAttribute("xmlns:gml", "http://www.opengis.net/gml/3.2");
+        writer.writeAttribute("xmlns:xs", "http://www.w3.org/2001/XMLSchema");
+        writer.writeAttribute("attributeFormDefault", "unqualified");
+        writer.writeAttribute("elementFormDefault", "qualified");
+        writer.writeAttribute("targetNamespace", targetNamespaceURI);
+        writer.writeAttribute("version", "3.0");
+        writer.writeCharacters(" ");
+    }
+
+    private void process(File file, XMLStreamWriter writer) throws XMLStreamException {
+        long start = System.nanoTime();
+        try (InputStream input = new FileInputStream(file)) {
+            XMLStreamReader reader = XmlSupport.createStreamReader(input);
+            try {
+                // copy all the schema child elements except import
+                reader.nextTag();
+                for (int event = reader.next();
+                        event != XMLStreamConstants.END_ELEMENT;
+                        event = reader.next()) {
+                    if (event != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    // the reader is not namespace aware, the local name is prefixed
+                    if ("import".equals(Utils.unQualifyName(reader.getLocalName()))) {
+                        skipElement(reader);
+                    } else {
+                        checkTypeRegistry(reader);
+                        copyElement(reader, writer);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException exception) {
+            throw new RuntimeException(
+                    String.format("Error merging schema file '%s'.", file), exception);
+        }
+        LOGGER.info(
+                String.format(
+                        "Schema file '%s' merged in %d ms.",
+                        file.getName(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    private void checkTypeRegistry(XMLStreamReader reader) {
+        // the reader is not namespace aware, names are prefixed
+        String tn = Utils.unQualifyName(reader.getLocalName());
+        if ("element".equals(tn) || "complexType".equals(tn) || "simpleType".equals(tn)) {
+            String typeName = reader.getAttributeValue(null, "name");
+            if (!typesSet.add(typeName == null ? "" : typeName)) {
+                LOGGER.log(Level.INFO, "Type '{0}' already found.", typeName);
+            }
+        }
+    }
+
+    /** Copies the current element subtree, the reader is left on the element end. */
+    private void copyElement(XMLStreamReader reader, XMLStreamWriter writer)
+            throws XMLStreamException {
+        int depth = 0;
+        do {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    writer.writeStartElement(reader.getLocalName());
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        String name = reader.getAttributeLocalName(i);
+                        String value =
+                                DocumentsMerger.translatePrefix(
+                                        name, reader.getAttributeValue(i), targetPrefix);
+                        writer.writeAttribute(name, value);
+                    }
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(
+                            reader.getTextCharacters(),
+                            reader.getTextStart(),
+                            reader.getTextLength());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                    break;
+                default:
+                    break;
+            }
+            if (depth > 0) {
+                reader.next();
+            }
+        } while (depth > 0);
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        for (int depth = 1; depth > 0; ) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.GmlDiff.IDENTITY_ATTRIBUTES;
+import static it.geosolutions.xsd2gml.GmlDiff.NAME_ATTR;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Streaming version of {@link GmlDiff#compare()} for schemas too big to be kept in memory as two
+ * DOMs. The origin schema is read with StAX once, each top level element subtree is spilled to a
+ * temporary file keeping only the elements names and identity attributes, and only the top level
+ * elements keys are kept in memory. The target schema is then read one top level element at the
+ * time, the matching origin subtrees are loaded back from the spill file, and the missing elements
+ * are written to the report as soon as they are found, in the same XPath format.
+ */
+final class StreamingGmlDiff {
+
+    // spill file records
+    private static final byte START_ELEMENT = 1;
+    private static final byte END_ELEMENT = 2;
+
+    private final Writer report;
+    // the same missing element is reported only once, like in the DOM diff
+    private final Set<String> reported = new HashSet<>();
+
+    private StreamingGmlDiff(Writer report) {
+        this.report = report;
+    }
+
+    /**
+     * Writes to the report the XPath of each target schema element missing in the origin schema,
+     * one per line. Only a top level element subtree per schema is kept in memory.
+     */
+    static void compare(File origin, File target, Writer report) {
+        File spill = null;
+        try {
+            spill = File.createTempFile("gml-diff", ".spill");
+            new StreamingGmlDiff(report).compare(origin, target, spill);
+            report.flush();
+        } catch (IOException | XMLStreamException exception) {
+            throw new RuntimeException(
+                    String.format(
+                            "Error comparing schema '%s' with schema '%s'.", target, origin),
+                    exception);
+        } finally {
+            if (spill != null && !spill.delete()) {
+                spill.deleteOnExit();
+            }
+        }
+    }
+
+    private void compare(File origin, File target, File spill)
+            throws IOException, XMLStreamException {
+        SpilledSchema spilledOrigin = spill(origin, spill);
+        try (RandomAccessFile spillInput = new RandomAccessFile(spill, "r");
+                InputStream input = new FileInputStream(target)) {
+            XMLStreamReader reader = XmlSupport.createNamespaceAwareStreamReader(input);
+            try {
+                reader.nextTag();
+                if (!XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(reader.getNamespaceURI())
+                        || !"schema".equals(reader.getLocalName())) {
+                    // not a schema, nothing to walk
+                    return;
+                }
+                Document document = XmlSupport.newNamespaceAwareDocument();
+                Element targetRoot = createElement(document, reader, getIdentityAttributes(reader));
+                boolean rootMatches =
+                        spilledOrigin.root != null
+                                && GmlDiff.SubElementsWalker.isSameStep(
+                                        targetRoot, spilledOrigin.root);
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    // a fresh document for each top level element, the previous can be collected
+                    document = XmlSupport.newNamespaceAwareDocument();
+                    targetRoot = (Element) document.importNode(targetRoot, false);
+                    document.appendChild(targetRoot);
+                    Element targetElement = readElement(document, reader);
+                    targetRoot.appendChild(targetElement);
+                    List<Element> originRoots =
+                            rootMatches
+                                    ? Collections.singletonList(
+                                            spilledOrigin.load(
+                                                    targetElement,
+                                                    XmlSupport.newNamespaceAwareDocument(),
+                                                    spillInput))
+                                    : Collections.emptyList();
+                    GmlDiff.SubElementsWalker walker = new GmlDiff.SubElementsWalker(null, null);
+                    walker.walkElement(targetElement, originRoots);
+                    for (String missing : walker.missingElementsXpathSet) {
+                        if (reported.add(missing)) {
+                            report.write(missing);
+                            report.write("\n");
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /** Spills the top level elements subtrees of the origin schema, indexing their offsets. */
+    private SpilledSchema spill(File origin, File spill)
+            throws IOException, XMLStreamException {
+        SpilledSchema spilled = new SpilledSchema();
+        try (InputStream input = new FileInputStream(origin);
+                CountingOutputStream counter =
+                        new CountingOutputStream(
+                                new BufferedOutputStream(new FileOutputStream(spill)));
+                DataOutputStream output = new DataOutputStream(counter)) {
+            XMLStreamReader reader = XmlSupport.createNamespaceAwareStreamReader(input);
+            try {
+                reader.nextTag();
+                spilled.root =
+                        createElement(
+                                XmlSupport.newNamespaceAwareDocument(),
+                                reader,
+                                getIdentityAttributes(reader));
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    Map<String, String> attributes = getIdentityAttributes(reader);
+                    spilled.add(
+                            reader.getNamespaceURI(),
+                            reader.getLocalName(),
+                            attributes.get(NAME_ATTR),
+                            counter.getByteCount());
+                    spillElement(reader, attributes, output);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return spilled;
+    }
+
+    /** Writes the current element subtree, the reader is left on the element end. */
+    private static void spillElement(
+            XMLStreamReader reader, Map<String, String> attributes, DataOutputStream output)
+            throws IOException, XMLStreamException {
+        writeStart(reader, attributes, output);
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                writeStart(reader, getIdentityAttributes(reader), output);
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                output.writeByte(END_ELEMENT);
+                depth--;
+            }
+        }
+    }
+
+    private static void writeStart(
+            XMLStreamReader reader, Map<String, String> attributes, DataOutputStream output)
+            throws IOException {
+        output.writeByte(START_ELEMENT);
+        output.writeUTF(StringUtils.defaultString(reader.getNamespaceURI()));
+        output.writeUTF(StringUtils.defaultString(reader.getPrefix()));
+        output.writeUTF(reader.getLocalName());
+        output.writeByte(attributes.size());
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            output.writeUTF(attribute.getKey());
+            output.writeUTF(attribute.getValue());
+        }
+    }
+
+    /** Reads the current element subtree as DOM, the reader is left on the element end. */
+    private static Element readElement(Document document, XMLStreamReader reader)
+            throws XMLStreamException {
+        Element element = createElement(document, reader, getIdentityAttributes(reader));
+        // text, like the annotations documentation, is not part of the diff
+        for (int event = reader.next();
+                event != XMLStreamConstants.END_ELEMENT;
+                event = reader.next()) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                element.appendChild(readElement(document, reader));
+            }
+        }
+        return element;
+    }
+
+    private static Element createElement(
+            Document document, XMLStreamReader reader, Map<String, String> attributes) {
+        Element element =
+                createElement(
+                        document,
+                        reader.getNamespaceURI(),
+                        reader.getPrefix(),
+                        reader.getLocalName());
+        attributes.forEach(element::setAttribute);
+        return element;
+    }
+
+    private static Element createElement(
+            Document document, String namespace, String prefix, String localName) {
+        String qualifiedName =
+                StringUtils.isEmpty(prefix) ? localName : prefix + ":" + localName;
+        return document.createElementNS(StringUtils.defaultIfEmpty(namespace, null), qualifiedName);
+    }
+
+    /** The identity attributes of the current element, the only ones the diff looks at. */
+    private static Map<String, String> getIdentityAttributes(XMLStreamReader reader) {
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = reader.getAttributeLocalName(i);
+            if (StringUtils.isEmpty(reader.getAttributeNamespace(i))
+                    && IDENTITY_ATTRIBUTES.contains(name)) {
+                attributes.put(name, reader.getAttributeValue(i));
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * The origin schema root and the spill file offsets of its top level elements, indexed by
+     * element name and by element name plus name attribute.
+     */
+    private static final class SpilledSchema {
+
+        Element root;
+
+        private final Map<String, List<Long>> byTag = new HashMap<>();
+        private final Map<String, List<Long>> byName = new HashMap<>();
+
+        void add(String namespace, String localName, String name, long offset) {
+            String key = namespace + '}' + localName;
+            byTag.computeIfAbsent(key, k -> new ArrayList<>()).add(offset);
+            if (name != null) {
+                byName.computeIfAbsent(key + '\u0000' + name, k -> new ArrayList<>()).add(offset);
+            }
+        }
+
+        /**
+         * Returns a copy of the origin root, in the provided empty document, holding the top level
+         * elements that could match the provided target element.
+         */
+        Element load(Element target, Document loaded, RandomAccessFile spill) throws IOException {
+            Element loadedRoot = (Element) loaded.importNode(root, false);
+            loaded.appendChild(loadedRoot);
+            String key = target.getNamespaceURI() + '}' + target.getLocalName();
+            String name = target.getAttribute(NAME_ATTR);
+            List<Long> offsets =
+                    StringUtils.isNotBlank(name)
+                            ? byName.get(key + '\u0000' + name)
+                            : byTag.get(key);
+            if (offsets == null) {
+                return loadedRoot;
+            }
+            for (long offset : offsets) {
+                spill.seek(offset);
+                DataInputStream input =
+                        new DataInputStream(
+                                new BufferedInputStream(
+                                        Channels.newInputStream(spill.getChannel())));
+                input.readByte();
+                loadedRoot.appendChild(readSpilled(loaded, input));
+            }
+            return loadedRoot;
+        }
+
+        /** Reads a spilled element whose start record was already consumed. */
+        private static Element readSpilled(Document document, DataInputStream input)
+                throws IOException {
+            String namespace = input.readUTF();
+            String prefix = input.readUTF();
+            String localName = input.readUTF();
+            Element element = createElement(document, namespace, prefix, localName);
+            int attributes = input.readByte();
+            for (int i = 0; i < attributes; i++) {
+                element.setAttribute(input.readUTF(), input.readUTF());
+            }
+            while (input.readByte() == START_ELEMENT) {
+                element.appendChild(readSpilled(document, input));
+            }
+            return element;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.Utils.unQualifyName;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Dependency graph of the types of a schema. Types are linked to their super types, to their
+ * extensions and to the types of their properties. The super types and extensions transitive
+ * closures are computed with the strongly connected components of the graph, so cycles are handled
+ * naturally, and memoized. Reachable types are collected with a breadth first worklist and a
+ * visited set, so the walk needs no recursion and its memory is linear in the number of types.
+ * Edges are computed on demand the first time a type is reached and memoized, the edges of the
+ * types of a worklist frontier are independent and can be computed in parallel. Instances are safe
+ * to share between threads, the memoized values are kept in concurrent maps and no lock is held
+ * during a walk, so concurrent walks run in parallel. Two walks may compute the same value, which
+ * is then stored twice, both copies are equal.
+ */
+final class TypeGraph {
+
+    // this types hierarchy is ignored, they are handled with a specific code path
+    private static final Set<String> IGNORED_TYPES =
+            new HashSet<>(
+                    Arrays.asList(
+                            "MultilingualString",
+                            "MultilingualStringValue",
+                            "MultilingualStringValueType"));
+
+    private final SchemaTypes schemaTypes;
+
+    // super type and extensions closures
+    private final Closures superTypes = new Closures(this::getSuperType);
+    private final Closures extensions = new Closures(this::getExtensions);
+    // memoized walk edges of each type
+    private final Map<String, Collection<String>> dependencies = new ConcurrentHashMap<>();
+
+    // memoized related types of each complex type
+    private final Map<String, Set<String>> relatedTypes = new ConcurrentHashMap<>();
+
+    TypeGraph(SchemaTypes schemaTypes) {
+        this.schemaTypes = schemaTypes;
+    }
+
+    /**
+     * Returns all the types related to the provided complex type, i.e. all its super types and all
+     * its extensions at all levels. The returned set should not be modified.
+     */
+    Set<String> getRelatedTypes(String complexTypeName) {
+        Set<String> related = relatedTypes.get(complexTypeName);
+        if (related == null) {
+            related = new HashSet<>(superTypes.get(complexTypeName));
+            related.addAll(extensions.get(complexTypeName));
+            related = Collections.unmodifiableSet(related);
+            // a concurrent walk may have stored it first, its copy is returned
+            Set<String> stored = relatedTypes.putIfAbsent(complexTypeName, related);
+            if (stored != null) {
+                related = stored;
+            }
+        }
+        return related;
+    }
+
+    /**
+     * Returns the names of the types reachable from the provided types, including them, following
+     * the simple content base types, the related types and the properties types. Ignored types are
+     * not included. An exception is throw if a reachable type doesn't exist.
+     */
+    Set<String> getReachableTypes(Collection<String> typesNames) {
+        return getReachableTypes(typesNames, null);
+    }
+
+    /**
+     * Same as {@link #getReachableTypes(Collection)}, if a pool is provided the edges of the types
+     * of each frontier of the walk are computed in parallel by tasks of the pool.
+     */
+    Set<String> getReachableTypes(Collection<String> typesNames, ForkJoinPool pool) {
+        Set<String> reachable = new HashSet<>();
+        List<String> frontier = new ArrayList<>();
+        for (String typeName : typesNames) {
+            String unqualifiedTypeName = unQualifyName(typeName);
+            if (reachable.add(unqualifiedTypeName)) {
+                frontier.add(unqualifiedTypeName);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            if (pool != null) {
+                computeDependencies(frontier, pool);
+            }
+            List<String> next = new ArrayList<>();
+            for (String typeName : frontier) {
+                for (String dependency : getDependencies(typeName)) {
+                    if (reachable.add(dependency)) {
+                        next.add(dependency);
+                    }
+                }
+            }
+            frontier = next;
+        }
+        reachable.removeAll(IGNORED_TYPES);
+        for (String typeName : reachable) {
+            if (!schemaTypes.isComplexType(typeName) && !schemaTypes.isSimpleType(typeName)) {
+                throw new RuntimeException(
+                        String.format("Type definition for '%s' not found.", typeName));
+            }
+        }
+        return reachable;
+    }
+
+    private Collection<String> getSuperType(String complexTypeName) {
+        String superTypeName = schemaTypes.getSuperTypeName(complexTypeName);
+        // the super type should be a complex type
+        if (superTypeName == null
+                || superTypeName.isEmpty()
+                || !schemaTypes.isComplexType(superTypeName)) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(superTypeName);
+    }
+
+    private Collection<String> getExtensions(String complexTypeName) {
+        return schemaTypes.getExtensionNames(complexTypeName);
+    }
+
+    /** The types that should be walked when the provided one is walked. */
+    private Collection<String> getDependencies(String typeName) {
+        Collection<String> typeDependencies = dependencies.get(typeName);
+        if (typeDependencies == null) {
+            typeDependencies = getDependencies(typeName, getSchemaDependencies(typeName));
+        }
+        return typeDependencies;
+    }
+
+    /** Memoizes the dependencies of a type given the ones read from the schema. */
+    private Collection<String> getDependencies(String typeName, List<String> schemaDependencies) {
+        List<String> typeDependencies = schemaDependencies;
+        if (hasDependencies(typeName)) {
+            typeDependencies = new ArrayList<>(schemaDependencies);
+            typeDependencies.addAll(getRelatedTypes(typeName));
+        }
+        dependencies.put(typeName, typeDependencies);
+        return typeDependencies;
+    }
+
+    /**
+     * Computes in parallel the dependencies read from the schema of the provided types, the ones
+     * not memoized yet. Only the schema types are accessed by the tasks.
+     */
+    private void computeDependencies(List<String> typesNames, ForkJoinPool pool) {
+        Map<String, ForkJoinTask<List<String>>> tasks = new LinkedHashMap<>();
+        for (String typeName : typesNames) {
+            if (!dependencies.containsKey(typeName)) {
+                tasks.put(typeName, pool.submit(() -> getSchemaDependencies(typeName)));
+            }
+        }
+        tasks.forEach((typeName, task) -> getDependencies(typeName, task.join()));
+    }
+
+    /**
+     * The simple content base type and the properties types of a complex type, the related types
+     * are not included.
+     */
+    private List<String> getSchemaDependencies(String typeName) {
+        if (!hasDependencies(typeName)) {
+            return Collections.emptyList();
+        }
+        List<String> dependencies = new ArrayList<>();
+        // check for simpleContent/extension/@base type-name
+        String simpleContentBase = schemaTypes.getSuperTypeName(typeName);
+        if (schemaTypes.hasSimpleContent(typeName)
+                && simpleContentBase != null
+                && !simpleContentBase.isEmpty()) {
+            dependencies.add(simpleContentBase);
+        }
+        // the complex type properties and attributes
+        for (String propertyType : schemaTypes.getPropertyTypeNames(typeName)) {
+            if (propertyType.contains("D2LogicalModel")) {
+                dependencies.add(unQualifyName(propertyType));
+            }
+        }
+        return dependencies;
+    }
+
+    private boolean hasDependencies(String typeName) {
+        // simple, ignored and unknown types have no dependencies
+        return !IGNORED_TYPES.contains(typeName) && schemaTypes.isComplexType(typeName);
+    }
+
+    /**
+     * Memoized transitive closures of a graph defined by a successors function, the closure of a
+     * node contains the nodes reachable with at least one edge. Closures are computed with an
+     * iterative version of Tarjan algorithm, all the nodes of a strongly connected component share
+     * the same closure. Concurrent runs are safe: a run treats the nodes already closed by another
+     * one as sinks, their memoized closures are complete, so the closures it computes are too.
+     */
+    private static final class Closures {
+
+        private final Function<String, Collection<String>> successorsFunction;
+
+        private final Map<String, Collection<String>> successors = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> closures = new ConcurrentHashMap<>();
+
+        Closures(Function<String, Collection<String>> successorsFunction) {
+            this.successorsFunction = successorsFunction;
+        }
+
+        Set<String> get(String node) {
+            Set<String> closure = closures.get(node);
+            if (closure == null) {
+                computeClosures(node);
+                closure = closures.get(node);
+            }
+            return closure;
+        }
+
+        private Collection<String> getSuccessors(String node) {
+            return successors.computeIfAbsent(node, successorsFunction);
+        }
+
+        private void computeClosures(String start) {
+            Map<String, Integer> indexes = new HashMap<>();
+            Map<String, Integer> lowLinks = new HashMap<>();
+            Deque<String> stack = new ArrayDeque<>();
+            Set<String> onStack = new HashSet<>();
+            // explicit call stack, each frame is a node and its successors iterator
+            Deque<Map.Entry<String, Iterator<String>>> frames = new ArrayDeque<>();
+            visit(start, indexes, lowLinks, stack, onStack, frames);
+            while (!frames.isEmpty()) {
+                Map.Entry<String, Iterator<String>> frame = frames.peek();
+                String node = frame.getKey();
+                Iterator<String> iterator = frame.getValue();
+                if (iterator.hasNext()) {
+                    String successor = iterator.next();
+                    if (closures.containsKey(successor)) {
+                        // computed by a previous run, its component is already closed
+                        continue;
+                    }
+                    if (!indexes.containsKey(successor)) {
+                        visit(successor, indexes, lowLinks, stack, onStack, frames);
+                    } else if (onStack.contains(successor)) {
+                        lowLinks.put(
+                                node, Math.min(lowLinks.get(node), indexes.get(successor)));
+                    }
+                    continue;
+                }
+                // all successors visited
+                frames.pop();
+                if (!frames.isEmpty()) {
+                    String parent = frames.peek().getKey();
+                    lowLinks.put(parent, Math.min(lowLinks.get(parent), lowLinks.get(node)));
+                }
+                if (lowLinks.get(node).equals(indexes.get(node))) {
+                    closeComponent(node, stack, onStack);
+                }
+            }
+        }
+
+        private void visit(
+                String node,
+                Map<String, Integer> indexes,
+                Map<String, Integer> lowLinks,
+                Deque<String> stack,
+                Set<String> onStack,
+                Deque<Map.Entry<String, Iterator<String>>> frames) {
+            int index = indexes.size();
+            indexes.put(node, index);
+            lowLinks.put(node, index);
+            stack.push(node);
+            onStack.add(node);
+            frames.push(
+                    new SimpleImmutableEntry<>(
+                            node, getSuccessors(node).iterator()));
+        }
+
+        /** Pops the component rooted at the provided node and stores its shared closure. */
+        private void closeComponent(String root, Deque<String> stack, Set<String> onStack) {
+            Set<String> members = new HashSet<>();
+            String member;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                members.add(member);
+            } while (!member.equals(root));
+            // successors outside the component are already closed
+            Set<String> closure = new HashSet<>();
+            for (String node : members) {
+                for (String successor : getSuccessors(node)) {
+                    closure.add(successor);
+                    if (!members.contains(successor)) {
+                        closure.addAll(closures.get(successor));
+                    }
+                }
+            }
+            Set<String> shared = Collections.unmodifiableSet(closure);
+            for (String node : members) {
+                closures.put(node, shared);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.Utils.unQualifyName;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.xml.namespace.QName;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Computes a content hash of everything that contributes to the GML conversion of a complex type:
+ * its definition, the definitions of its related types, the kind of the types of their properties
+ * and the target namespace. Two conversions with the same hash produce the same fragment. The
+ * digest of each definition is memoized, instances are not thread safe.
+ */
+final class TypeHasher {
+
+    // to be changed when the conversion logic changes, so old cache entries are invalidated
+    private static final String VERSION = "1";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final SchemaTypes schemaTypes;
+    private final QName targetNamespace;
+
+    // scratch document used to get the types definitions
+    private final Document scratch = Xsd2Gml.createOutputSchema();
+    private final Map<String, String> definitionsDigests = new HashMap<>();
+
+    TypeHasher(SchemaTypes schemaTypes, QName targetNamespace) {
+        this.schemaTypes = schemaTypes;
+        this.targetNamespace = targetNamespace;
+    }
+
+    /** Returns the hexadecimal hash of the conversion of a complex type and its related types. */
+    String hash(String complexTypeName, Set<String> relatedTypes) {
+        MessageDigest digest = newDigest();
+        update(digest, VERSION);
+        update(digest, targetNamespace.getPrefix());
+        update(digest, targetNamespace.getLocalPart());
+        update(digest, targetNamespace.getNamespaceURI());
+        update(digest, complexTypeName);
+        update(digest, getDefinitionDigest(complexTypeName));
+        // related types are merged, their order doesn't change the merged content
+        for (String relatedType : new TreeSet<>(relatedTypes)) {
+            update(digest, relatedType);
+            update(digest, getDefinitionDigest(relatedType));
+        }
+        return toHex(digest.digest());
+    }
+
+    /** Digest of a complex type definition and of the kinds of its properties types. */
+    private String getDefinitionDigest(String complexTypeName) {
+        String definitionDigest = definitionsDigests.get(complexTypeName);
+        if (definitionDigest != null) {
+            return definitionDigest;
+        }
+        MessageDigest digest = newDigest();
+        update(digest, schemaTypes.importComplexType(complexTypeName, scratch));
+        // the merger converts properties based on the kind of their types
+        for (String propertyType : schemaTypes.getPropertyTypeNames(complexTypeName)) {
+            String typeName = unQualifyName(propertyType);
+            update(digest, typeName);
+            update(digest, getKind(typeName));
+        }
+        definitionDigest = toHex(digest.digest());
+        definitionsDigests.put(complexTypeName, definitionDigest);
+        return definitionDigest;
+    }
+
+    private String getKind(String typeName) {
+        if (schemaTypes.isComplexType(typeName)) {
+            return schemaTypes.hasSimpleContent(typeName) ? "simple-content" : "complex";
+        }
+        return schemaTypes.isSimpleType(typeName) ? "simple" : "unknown";
+    }
+
+    /** Feeds the digest with the names, sorted attributes and text of the provided sub tree. */
+    private static void update(MessageDigest digest, Node node) {
+        if (node instanceof Element) {
+            update(digest, "<" + node.getNodeName());
+            // attributes are sorted, their order has no meaning
+            Map<String, String> attributes = new TreeMap<>();
+            NamedNodeMap nodeAttributes = node.getAttributes();
+            for (int i = 0; i < nodeAttributes.getLength(); i++) {
+                Attr attribute = (Attr) nodeAttributes.item(i);
+                attributes.put(attribute.getName(), attribute.getValue());
+            }
+            attributes.forEach(
+                    (name, value) -> {
+                        update(digest, name);
+                        update(digest, value);
+                    });
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                update(digest, child);
+            }
+            update(digest, ">");
+        } else if (node.getNodeType() == Node.TEXT_NODE
+                || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+            update(digest, node.getNodeValue());
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // length prefixed, so values boundaries are part of the digest
+        digest.update(
+                new byte[] {
+                    (byte) (bytes.length >>> 24),
+                    (byte) (bytes.length >>> 16),
+                    (byte) (bytes.length >>> 8),
+                    (byte) bytes.length
+                });
+        digest.update(bytes);
+    }
+
+    /** Returns the hexadecimal hash of the provided value. */
+    static String hash(String value) {
+        MessageDigest digest = newDigest();
+        update(digest, value);
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new RuntimeException("SHA-256 digest not available.", exception);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
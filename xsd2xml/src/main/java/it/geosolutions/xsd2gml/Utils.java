@@ -2,21 +2,17 @@ package it.geosolutions.xsd2gml;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -45,9 +41,8 @@ final class Utils {
     static Document readDocument(InputStream input) {
         try {
             // red the XML document form the input stream
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            return documentBuilder.parse(input);
+            // parsers are reused per thread, schemas files can be read concurrently
+            return XmlSupport.getDocumentBuilder().parse(input);
         } catch (Exception exception) {
             // something bad happen when reading the XMl document
             throw new RuntimeException(
@@ -67,36 +62,28 @@ final class Utils {
     }
 
     static String documentToStringNpraPrefixed(Document document, String targetPrefix) {
-        try {
-            // indent the document with two spaces and we don't want XML declarations
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            transformerFactory.setAttribute("indent-number", 2);
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            // write to the string output and get the result back
-            StringWriter writer = new StringWriter();
-            transformer.transform(new DOMSource(document), new StreamResult(writer));
-            return writer.getBuffer().toString().replace("D2LogicalModel", targetPrefix);
-        } catch (Exception exception) {
-            throw new RuntimeException(
-                    "Something bad happen when writing the document to the provided output stream.",
-                    exception);
-        }
+        return documentToString(document).replace("D2LogicalModel", targetPrefix);
     }
 
     static String documentToString(Document document) {
+        // write to the string output and get the result back
+        StringWriter writer = new StringWriter();
+        transform(document, new StreamResult(writer));
+        return writer.getBuffer().toString();
+    }
+
+    /** Writes the document to the provided output stream, which will not be closed. */
+    static void writeDocument(Document document, OutputStream output) {
+        transform(document, new StreamResult(output));
+    }
+
+    private static void transform(Document document, StreamResult result) {
         try {
             // indent the document with two spaces and we don't want XML declarations
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            transformerFactory.setAttribute("indent-number", 2);
-            Transformer transformer = transformerFactory.newTransformer();
+            Transformer transformer = XmlSupport.getTransformer();
             transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
             transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            // write to the string output and get the result back
-            StringWriter writer = new StringWriter();
-            transformer.transform(new DOMSource(document), new StreamResult(writer));
-            return writer.getBuffer().toString();
+            transformer.transform(new DOMSource(document), result);
         } catch (Exception exception) {
             throw new RuntimeException(
                     "Something bad happen when writing the document to the provided output stream.",
@@ -106,9 +93,8 @@ final class Utils {
 
     static Element searchElement(Node startingNode, String xpath) {
         try {
-            XPath xpathBuilder = XPathFactory.newInstance().newXPath();
             Node node =
-                    (Node) xpathBuilder.compile(xpath).evaluate(startingNode, XPathConstants.NODE);
+                    (Node) XPathEngine.DEFAULT.evaluate(xpath, startingNode, XPathConstants.NODE);
             return node == null ? null : toElement(node);
         } catch (Exception exception) {
             throw new RuntimeException(
@@ -120,18 +106,17 @@ final class Utils {
         List<Element> cloned = new ArrayList<>();
         for (Element element : elements) {
             cloned.add(toElement(element.cloneNode(deep)));
+            ConversionStats.get().nodesImported(1);
         }
         return cloned;
     }
     
     static List<Element> searchElements(Node startingNode, String xpath) {
         try {
-            XPath xpathBuilder = XPathFactory.newInstance().newXPath();
             NodeList nodes =
                     (NodeList)
-                            xpathBuilder
-                                    .compile(xpath)
-                                    .evaluate(startingNode, XPathConstants.NODESET);
+                            XPathEngine.DEFAULT.evaluate(
+                                    xpath, startingNode, XPathConstants.NODESET);
             if (nodes == null || nodes.getLength() == 0) {
                 return new ArrayList<>();
             }
@@ -226,12 +211,10 @@ final class Utils {
 
     static List<Attr> searchAttributes(Node startingNode, String xpath) {
         try {
-            XPath xpathBuilder = XPathFactory.newInstance().newXPath();
             NodeList nodes =
                     (NodeList)
-                            xpathBuilder
-                                    .compile(xpath)
-                                    .evaluate(startingNode, XPathConstants.NODESET);
+                            XPathEngine.DEFAULT.evaluate(
+                                    xpath, startingNode, XPathConstants.NODESET);
             if (nodes == null || nodes.getLength() == 0) {
                 return new ArrayList<>();
             }
@@ -246,8 +229,16 @@ final class Utils {
         }
     }
 
-    static boolean isSimpleContent(Element complexType) {
-	NodeList simples = complexType.getElementsByTagName("xs:simpleContent");
-	return simples.getLength() > 0;
+    /**
+     * Returns the local name of the provided node, for nodes created by a non namespace aware
+     * parser the prefix, if any, is removed from the node name.
+     */
+    static String localName(Node node) {
+        String localName = node.getLocalName();
+        if (localName != null) {
+            return localName;
+        }
+        String nodeName = node.getNodeName();
+        return nodeName.substring(nodeName.indexOf(':') + 1);
     }
 }
@@ -0,0 +1,99 @@
+package it.geosolutions.xsd2gml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.apache.ws.commons.util.NamespaceContextImpl;
+import org.w3c.dom.Node;
+
+/**
+ * Shared XPath evaluation engine. Each engine is bound to a namespace context, XPath instances and
+ * compiled expressions are not thread safe so each thread gets its own XPath instance and its own
+ * bounded (LRU) cache of compiled expressions, the cache key is the expression text and the
+ * namespace context of the engine. Engines can be safely used by several threads.
+ */
+final class XPathEngine {
+
+    // maximum number of compiled expressions cached per thread and engine
+    private static final int CACHE_SIZE = 512;
+
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    /** Engine without namespace context, used with non namespace aware documents. */
+    static final XPathEngine DEFAULT = new XPathEngine(null);
+
+    /** Engine with the 'xs' prefix bound to XML schema namespace. */
+    static final XPathEngine XML_SCHEMA = new XPathEngine(xmlSchemaNamespaceContext());
+
+    private final NamespaceContext namespaceContext;
+    private final ThreadLocal<XPath> xpath;
+    private final ThreadLocal<Map<String, XPathExpression>> expressions;
+
+    private XPathEngine(NamespaceContext namespaceContext) {
+        this.namespaceContext = namespaceContext;
+        this.xpath = ThreadLocal.withInitial(this::newXPath);
+        this.expressions = ThreadLocal.withInitial(XPathEngine::newExpressionsCache);
+    }
+
+    /** Evaluates the provided XPath expression, the compiled expression will be cached. */
+    Object evaluate(String expression, Node startingNode, QName returnType)
+            throws XPathExpressionException {
+        ConversionStats.get().xpathEvaluated();
+        return compile(expression).evaluate(startingNode, returnType);
+    }
+
+    /** Returns the compiled version of the provided expression for the current thread. */
+    XPathExpression compile(String expression) throws XPathExpressionException {
+        Map<String, XPathExpression> cache = expressions.get();
+        XPathExpression compiled = cache.get(expression);
+        if (compiled != null) {
+            CACHE_HITS.increment();
+            return compiled;
+        }
+        CACHE_MISSES.increment();
+        compiled = xpath.get().compile(expression);
+        cache.put(expression, compiled);
+        return compiled;
+    }
+
+    /** Number of expressions compilations avoided since the JVM started. */
+    static long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    /** Number of expressions that had to be compiled since the JVM started. */
+    static long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    private XPath newXPath() {
+        XPath newXPath = XmlSupport.newXPath();
+        if (namespaceContext != null) {
+            newXPath.setNamespaceContext(namespaceContext);
+        }
+        return newXPath;
+    }
+
+    private static Map<String, XPathExpression> newExpressionsCache() {
+        return new LinkedHashMap<String, XPathExpression>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    private static NamespaceContext xmlSchemaNamespaceContext() {
+        NamespaceContextImpl context = new NamespaceContextImpl();
+        context.startPrefixMapping("xs", Xsd2Gml.XML_NAMESPACE);
+        return context;
+    }
+}
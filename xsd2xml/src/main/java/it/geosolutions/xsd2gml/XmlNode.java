@@ -0,0 +1,135 @@
+package it.geosolutions.xsd2gml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compact and immutable XML element, whitespace only text is not retained. Instances are safe to
+ * share between threads and can be materialized as DOM elements of any document.
+ */
+final class XmlNode {
+
+    private final String namespaceURI;
+    private final String qualifiedName;
+    private final String localName;
+
+    // attributes qualified names, namespaces and values at the same index
+    private final String[] attributesNames;
+    private final String[] attributesNamespaces;
+    private final String[] attributesValues;
+
+    private final List<XmlNode> children;
+    private final String text;
+
+    XmlNode(
+            String namespaceURI,
+            String qualifiedName,
+            String localName,
+            String[] attributesNames,
+            String[] attributesNamespaces,
+            String[] attributesValues,
+            List<XmlNode> children,
+            String text) {
+        this.namespaceURI = namespaceURI;
+        this.qualifiedName = qualifiedName;
+        this.localName = localName;
+        this.attributesNames = attributesNames;
+        this.attributesNamespaces = attributesNamespaces;
+        this.attributesValues = attributesValues;
+        this.children =
+                children.isEmpty()
+                        ? Collections.emptyList()
+                        : Collections.unmodifiableList(new ArrayList<>(children));
+        this.text = text;
+    }
+
+    /** Returns a copy of this node, with the same name and attributes, and the provided content. */
+    XmlNode withContent(List<XmlNode> children, String text) {
+        return new XmlNode(
+                namespaceURI,
+                qualifiedName,
+                localName,
+                attributesNames,
+                attributesNamespaces,
+                attributesValues,
+                children,
+                text);
+    }
+
+    String getNamespaceURI() {
+        return namespaceURI;
+    }
+
+    String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    String getLocalName() {
+        return localName;
+    }
+
+    /** Returns the value of the provided attribute, or an empty string like DOM does. */
+    String getAttribute(String name) {
+        for (int i = 0; i < attributesNames.length; i++) {
+            if (attributesNames[i].equals(name)) {
+                return attributesValues[i];
+            }
+        }
+        return "";
+    }
+
+    List<XmlNode> getChildren() {
+        return children;
+    }
+
+    /** Returns the child elements with the provided local name. */
+    List<XmlNode> getChildren(String localName) {
+        List<XmlNode> found = new ArrayList<>();
+        for (XmlNode child : children) {
+            if (child.localName.equals(localName)) {
+                found.add(child);
+            }
+        }
+        return found;
+    }
+
+    /** Text content of this element, NULL if the element contains only whitespace. */
+    String getText() {
+        return text;
+    }
+
+    /** Creates a DOM version of this node owned by the provided document. */
+    Element toElement(Document document, boolean deep) {
+        Element element = document.createElementNS(namespaceURI, qualifiedName);
+        for (int i = 0; i < attributesNames.length; i++) {
+            if (attributesNames[i].equals(XMLConstants.XMLNS_ATTRIBUTE)
+                    || attributesNames[i].startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+                element.setAttributeNS(
+                        XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        attributesNames[i],
+                        attributesValues[i]);
+            } else if (attributesNamespaces[i] != null) {
+                element.setAttributeNS(
+                        attributesNamespaces[i], attributesNames[i], attributesValues[i]);
+            } else {
+                element.setAttribute(attributesNames[i], attributesValues[i]);
+            }
+        }
+        if (!deep) {
+            return element;
+        }
+        if (text != null) {
+            element.appendChild(document.createTextNode(text));
+        }
+        for (XmlNode child : children) {
+            element.appendChild(child.toElement(document, true));
+        }
+        return element;
+    }
+}
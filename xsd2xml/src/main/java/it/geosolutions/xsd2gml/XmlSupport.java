@@ -0,0 +1,226 @@
+package it.geosolutions.xsd2gml;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Result;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * Parsers, StAX readers and writers, transformers and XPath objects used by the conversion.
+ * Factories are the JDK ones, created from their class names so no service lookup happens, and
+ * nothing is ever fetched from the network: external DTDs are not loaded and external entities
+ * resolve to empty content. Parsers and transformers are not thread safe, an instance is reused per
+ * thread and reset each time it is returned, so it should not be kept by callers. The StAX
+ * factories are thread safe, a new reader or writer is created each time.
+ */
+final class XmlSupport {
+
+    private static final Logger LOGGER = Logger.getLogger(XmlSupport.class.getName());
+
+    private static final String DOCUMENT_BUILDER_FACTORY =
+            "com.sun.org.apache.xerces.internal.jaxp.DocumentBuilderFactoryImpl";
+    private static final String TRANSFORMER_FACTORY =
+            "com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl";
+    private static final String XPATH_FACTORY =
+            "com.sun.org.apache.xpath.internal.jaxp.XPathFactoryImpl";
+
+    // xsltc output property, reset() drops the factory indent number
+    private static final String INDENT_AMOUNT = "{http://xml.apache.org/xslt}indent-amount";
+
+    private static final String LOAD_EXTERNAL_DTD =
+            "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+
+    static final EntityResolver NO_NETWORK_RESOLVER =
+            (publicId, systemId) -> {
+                LOGGER.fine(String.format("External entity '%s' not resolved.", systemId));
+                return new InputSource(new StringReader(""));
+            };
+
+    private static final URIResolver NO_NETWORK_URI_RESOLVER =
+            (href, base) -> {
+                throw new TransformerException(
+                        String.format("External resource '%s' not allowed.", href));
+            };
+
+    private static final DocumentBuilderFactory BUILDER_FACTORY = newBuilderFactory(false);
+    private static final DocumentBuilderFactory NAMESPACE_AWARE_BUILDER_FACTORY =
+            newBuilderFactory(true);
+    private static final TransformerFactory TRANSFORMER_FACTORY_INSTANCE = newTransformerFactory();
+    private static final XMLInputFactory STREAM_INPUT_FACTORY = newStreamInputFactory(false);
+    private static final XMLInputFactory NAMESPACE_AWARE_STREAM_INPUT_FACTORY =
+            newStreamInputFactory(true);
+    private static final XMLOutputFactory STREAM_OUTPUT_FACTORY =
+            newDefaultFactory(XMLOutputFactory.class, XMLOutputFactory::newFactory);
+
+    private static final ThreadLocal<DocumentBuilder> BUILDERS =
+            ThreadLocal.withInitial(() -> newDocumentBuilder(BUILDER_FACTORY));
+    private static final ThreadLocal<DocumentBuilder> NAMESPACE_AWARE_BUILDERS =
+            ThreadLocal.withInitial(() -> newDocumentBuilder(NAMESPACE_AWARE_BUILDER_FACTORY));
+    private static final ThreadLocal<Transformer> TRANSFORMERS =
+            ThreadLocal.withInitial(XmlSupport::newTransformer);
+
+    private XmlSupport() {}
+
+    /** Parser of this thread, not namespace aware, the one used to read the input schemas. */
+    static DocumentBuilder getDocumentBuilder() {
+        return reset(BUILDERS.get());
+    }
+
+    /** Namespace aware parser of this thread. */
+    static DocumentBuilder getNamespaceAwareDocumentBuilder() {
+        return reset(NAMESPACE_AWARE_BUILDERS.get());
+    }
+
+    /** New empty document, not namespace aware. */
+    static Document newDocument() {
+        return BUILDERS.get().newDocument();
+    }
+
+    /** New empty namespace aware document. */
+    static Document newNamespaceAwareDocument() {
+        return NAMESPACE_AWARE_BUILDERS.get().newDocument();
+    }
+
+    /**
+     * New StAX reader, not namespace aware like the input schemas parser: names keep their prefix
+     * and namespaces declarations are plain attributes. Text is not coalesced, so it can be copied
+     * as it is read.
+     */
+    static XMLStreamReader createStreamReader(InputStream input) throws XMLStreamException {
+        return STREAM_INPUT_FACTORY.createXMLStreamReader(input);
+    }
+
+    /** New namespace aware StAX reader, adjacent text is reported as a single event. */
+    static XMLStreamReader createNamespaceAwareStreamReader(InputStream input)
+            throws XMLStreamException {
+        return NAMESPACE_AWARE_STREAM_INPUT_FACTORY.createXMLStreamReader(input);
+    }
+
+    /** New StAX writer of the provided output stream, UTF-8 encoding is used. */
+    static XMLStreamWriter createStreamWriter(OutputStream output) throws XMLStreamException {
+        return STREAM_OUTPUT_FACTORY.createXMLStreamWriter(output, StandardCharsets.UTF_8.name());
+    }
+
+    /** New StAX writer of the provided result, e.g. a DOM result. */
+    static XMLStreamWriter createStreamWriter(Result result) throws XMLStreamException {
+        return STREAM_OUTPUT_FACTORY.createXMLStreamWriter(result);
+    }
+
+    /**
+     * Transformer of this thread without output properties, indenting uses two spaces when the
+     * indent output property is set.
+     */
+    static Transformer getTransformer() {
+        Transformer transformer = TRANSFORMERS.get();
+        transformer.reset();
+        transformer.setOutputProperty(INDENT_AMOUNT, "2");
+        transformer.setURIResolver(NO_NETWORK_URI_RESOLVER);
+        return transformer;
+    }
+
+    /** New XPath object, XPath objects are not thread safe. */
+    static XPath newXPath() {
+        try {
+            return XPathFactory.newInstance(
+                            XPathFactory.DEFAULT_OBJECT_MODEL_URI, XPATH_FACTORY, null)
+                    .newXPath();
+        } catch (Exception exception) {
+            throw new RuntimeException("Error creating the XPath factory.", exception);
+        }
+    }
+
+    private static DocumentBuilder reset(DocumentBuilder builder) {
+        builder.reset();
+        builder.setEntityResolver(NO_NETWORK_RESOLVER);
+        return builder;
+    }
+
+    private static DocumentBuilderFactory newBuilderFactory(boolean namespaceAware) {
+        try {
+            DocumentBuilderFactory factory =
+                    DocumentBuilderFactory.newInstance(DOCUMENT_BUILDER_FACTORY, null);
+            factory.setNamespaceAware(namespaceAware);
+            factory.setFeature(LOAD_EXTERNAL_DTD, false);
+            return factory;
+        } catch (Exception exception) {
+            throw new RuntimeException(
+                    "Error creating the XML documents parser factory.", exception);
+        }
+    }
+
+    private static DocumentBuilder newDocumentBuilder(DocumentBuilderFactory factory) {
+        try {
+            return factory.newDocumentBuilder();
+        } catch (Exception exception) {
+            throw new RuntimeException("Error creating the XML documents parser.", exception);
+        }
+    }
+
+    private static XMLInputFactory newStreamInputFactory(boolean namespaceAware) {
+        XMLInputFactory factory =
+                newDefaultFactory(XMLInputFactory.class, XMLInputFactory::newFactory);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, namespaceAware);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, namespaceAware);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * The JDK StAX factory, newDefaultFactory skips the service lookup but it is only available
+     * since Java 9, on Java 8 the lookup is done once here.
+     */
+    private static <T> T newDefaultFactory(Class<T> type, Supplier<T> lookup) {
+        try {
+            return type.cast(type.getMethod("newDefaultFactory").invoke(null));
+        } catch (NoSuchMethodException exception) {
+            return lookup.get();
+        } catch (Exception exception) {
+            throw new RuntimeException(
+                    String.format("Error creating the %s.", type.getSimpleName()), exception);
+        }
+    }
+
+    private static TransformerFactory newTransformerFactory() {
+        TransformerFactory factory = TransformerFactory.newInstance(TRANSFORMER_FACTORY, null);
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+        factory.setURIResolver(NO_NETWORK_URI_RESOLVER);
+        // documents are written indented with two spaces
+        factory.setAttribute("indent-number", 2);
+        return factory;
+    }
+
+    private static Transformer newTransformer() {
+        try {
+            // the factory is not thread safe
+            synchronized (TRANSFORMER_FACTORY_INSTANCE) {
+                return TRANSFORMER_FACTORY_INSTANCE.newTransformer();
+            }
+        } catch (Exception exception) {
+            throw new RuntimeException("Error creating the XML documents transformer.", exception);
+        }
+    }
+}
@@ -1,66 +1,130 @@
 package it.geosolutions.xsd2gml;
 
 import static it.geosolutions.xsd2gml.Utils.toElement;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 public final class Xsd2Gml {
 
     static final String GML_NAMESPACE_32 = "http://www.opengis.net/gml/3.2";
     static final String XML_NAMESPACE = "http://www.w3.org/2001/XMLSchema";
 
-    private final Document outputSchema;
-    private final Element outputRootNode;
+    private final SchemaTypes schemaTypes;
     private final QName targetNamespace;
 
+    // types found by the schema walker sorted by name, complex types are mapped to their related
+    // types, so the output order doesn't depend on how the types were converted
+    private final SortedMap<String, Set<String>> rootComplexTypeNames;
+    private final SortedSet<String> rootSimpleTypeNames;
+
+    // pool used to convert the complex types in parallel, NULL for a sequential conversion
+    private final ForkJoinPool pool;
+    // cache of the complex types conversions, NULL if no cache should be used
+    private final ConversionCache cache;
+
+    // output schema DOM, only created if requested
+    private Document gmlSchema;
+
     public Xsd2Gml(
             Document inputSchema, final QName targetNamespace, List<String> startingTypesNames) {
-        // create and initiate the GML output schema document
+        // index the input schema types, the index is shared by the walker and the converters
+        this(new SchemaIndex(inputSchema), targetNamespace, startingTypesNames);
+    }
+
+    Xsd2Gml(SchemaTypes schemaTypes, final QName targetNamespace, List<String> startingTypesNames) {
+        this(schemaTypes, targetNamespace, startingTypesNames, null, null);
+    }
+
+    Xsd2Gml(
+            SchemaTypes schemaTypes,
+            final QName targetNamespace,
+            List<String> startingTypesNames,
+            ForkJoinPool pool,
+            ConversionCache cache) {
+        this(
+                schemaTypes,
+                new TypeGraph(schemaTypes),
+                targetNamespace,
+                startingTypesNames,
+                pool,
+                cache);
+    }
+
+    /**
+     * If a pool is provided each complex type is converted by a task of the pool in its own
+     * document, and the schema walk expands its frontiers in parallel, the produced output is the
+     * same of a sequential conversion. If a cache is provided only the complex types whose
+     * definitions, or related types definitions, changed since they were cached are converted. The
+     * types graph can be shared by converters of the same schema types, so the types closures are
+     * computed only once.
+     */
+    Xsd2Gml(
+            SchemaTypes schemaTypes,
+            TypeGraph typeGraph,
+            final QName targetNamespace,
+            List<String> startingTypesNames,
+            ForkJoinPool pool,
+            ConversionCache cache) {
+        this.schemaTypes = schemaTypes;
         this.targetNamespace = targetNamespace;
-        outputSchema = createOutputSchema();
-        outputRootNode = initOutputSchema(inputSchema, outputSchema, targetNamespace);
-        // walk the schema to get the relevant types and relations
-        SchemaWalker walker = new SchemaWalker(inputSchema, startingTypesNames);
-        // filter complex-content only
-        walker.getRootComplexTypes().entrySet().stream()
-                .forEach(
-                        e -> {
-                            ComplexTypeConverter converter =
-                                    new ComplexTypeConverter(inputSchema, e.getKey(), e.getValue());
-                            converter.toGmlFeature(outputSchema, outputRootNode, targetNamespace);
-                        });
-        walker.getRootSimpleTypes().forEach(simpleType -> adoptSimpleType(simpleType));
-    }
-    
-    private void adoptSimpleType(Element simpleType) {
-        Element node = (Element) simpleType.cloneNode(true);
-        outputSchema.adoptNode(node);
-        outputRootNode.appendChild(node);
+        this.pool = pool;
+        this.cache = cache;
+        // walk the schema to get the relevant types and relations, conversion is done on demand
+        SchemaWalker walker = new SchemaWalker(schemaTypes, typeGraph, startingTypesNames, pool);
+        rootComplexTypeNames = new TreeMap<>(walker.getRootComplexTypeNames());
+        rootSimpleTypeNames = new TreeSet<>(walker.getRootSimpleTypeNames());
     }
 
     static Document createOutputSchema() {
         try {
             // build the output document that will contain the generated GML schema
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            return documentBuilder.newDocument();
+            return XmlSupport.newDocument();
         } catch (Exception exception) {
             // something bad happen when creating the document
             throw new RuntimeException("Error creating output schema.", exception);
         }
     }
 
+    static Document createNamespaceAwareDocument() {
+        try {
+            return XmlSupport.newNamespaceAwareDocument();
+        } catch (Exception exception) {
+            throw new RuntimeException("Error creating output schema.", exception);
+        }
+    }
+
     static Element initOutputSchema(
             Document inputSchema, Document outputSchema, QName targetNamespace) {
         // copy the root node (schema) of the input schema to the output schema
         Element outputRootNode =
                 toElement(outputSchema.importNode(inputSchema.getFirstChild(), false));
+        return initOutputSchema(outputRootNode, outputSchema, targetNamespace);
+    }
+
+    static Element initOutputSchema(
+            SchemaTypes schemaTypes, Document outputSchema, QName targetNamespace) {
+        // copy the root node (schema) of the input schema to the output schema
+        Element outputRootNode = schemaTypes.importSchemaElement(outputSchema);
+        return initOutputSchema(outputRootNode, outputSchema, targetNamespace);
+    }
+
+    private static Element initOutputSchema(
+            Element outputRootNode, Document outputSchema, QName targetNamespace) {
         // get ride of the old namespace
         outputRootNode.removeAttribute("xmlns:D2LogicalModel");
         outputRootNode.removeAttribute("targetNamespace");
@@ -79,7 +143,166 @@ public final class Xsd2Gml {
         return outputRootNode;
     }
 
+    /** Returns the whole GML schema as a DOM, the D2LogicalModel prefix is not remapped. */
     Document getGmlSchema() {
+        if (gmlSchema != null) {
+            return gmlSchema;
+        }
+        // create and initiate the GML output schema document
+        Document outputSchema = createOutputSchema();
+        Element outputRootNode = initOutputSchema(schemaTypes, outputSchema, targetNamespace);
+        // filter complex-content only
+        convertComplexTypes(
+                outputSchema,
+                outputRootNode,
+                convertedRootNode -> {
+                    if (convertedRootNode != outputRootNode) {
+                        moveChildren(convertedRootNode, outputSchema, outputRootNode);
+                    }
+                });
+        rootSimpleTypeNames.forEach(
+                simpleType ->
+                        outputRootNode.appendChild(
+                                schemaTypes.importSimpleType(simpleType, outputSchema)));
+        addMultilingualStringTypes(outputSchema, outputRootNode);
+        gmlSchema = outputSchema;
+        return gmlSchema;
+    }
+
+    /**
+     * Writes the GML schema to the provided output stream, the D2LogicalModel prefix is remapped to
+     * the target namespace prefix. Types are converted and written one at the time, so only the
+     * current type definitions are kept in memory. The output stream is not closed.
+     */
+    void write(OutputStream output) {
+        try (GmlSchemaWriter writer = new GmlSchemaWriter(output, targetNamespace.getPrefix())) {
+            write(writer);
+        }
+    }
+
+    /**
+     * Returns the GML schema as a namespace aware DOM, the D2LogicalModel prefix is remapped to the
+     * target namespace prefix. This is the same content produced by {@link #write(OutputStream)}.
+     */
+    Document getPrefixedGmlSchema() {
+        Document document = createNamespaceAwareDocument();
+        try (GmlSchemaWriter writer =
+                GmlSchemaWriter.toDocument(document, targetNamespace.getPrefix())) {
+            write(writer);
+        }
+        return document;
+    }
+
+    /** Writes the GML schema, one converted type at the time, using the provided writer. */
+    void write(GmlSchemaWriter writer) {
+        // the scratch document root element only holds the type being written
+        Document scratchSchema = createOutputSchema();
+        Element scratchRootNode = initOutputSchema(schemaTypes, scratchSchema, targetNamespace);
+        writer.startSchema(scratchRootNode);
+        flush(writer, scratchRootNode);
+        convertComplexTypes(
+                scratchSchema,
+                scratchRootNode,
+                convertedRootNode -> flush(writer, convertedRootNode));
+        for (String simpleType : rootSimpleTypeNames) {
+            scratchRootNode.appendChild(schemaTypes.importSimpleType(simpleType, scratchSchema));
+            flush(writer, scratchRootNode);
+        }
+        addMultilingualStringTypes(scratchSchema, scratchRootNode);
+        flush(writer, scratchRootNode);
+        writer.endSchema();
+    }
+
+    /**
+     * Converts the root complex types in names order, after each conversion the consumer receives
+     * the root element the type definitions were appended to. Sequential conversions use the
+     * provided document, parallel ones use a document per type and the consumer is invoked in
+     * names order as well.
+     */
+    private void convertComplexTypes(
+            Document outputSchema, Element outputRootNode, Consumer<Element> consumer) {
+        if (pool == null && cache == null) {
+            rootComplexTypeNames.forEach(
+                    (name, relatedTypes) -> {
+                        new ComplexTypeConverter(schemaTypes, name, relatedTypes)
+                                .toGmlFeature(outputSchema, outputRootNode, targetNamespace);
+                        consumer.accept(outputRootNode);
+                    });
+            return;
+        }
+        // the hashes are computed upfront, the hasher is not thread safe
+        Map<String, String> hashes = new HashMap<>();
+        if (cache != null) {
+            TypeHasher hasher = new TypeHasher(schemaTypes, targetNamespace);
+            rootComplexTypeNames.forEach(
+                    (name, relatedTypes) -> hashes.put(name, hasher.hash(name, relatedTypes)));
+        }
+        if (pool == null) {
+            rootComplexTypeNames.forEach(
+                    (name, relatedTypes) ->
+                            consumer.accept(
+                                    convertComplexType(name, relatedTypes, hashes.get(name))));
+            return;
+        }
+        List<ForkJoinTask<Element>> tasks = new ArrayList<>(rootComplexTypeNames.size());
+        rootComplexTypeNames.forEach(
+                (name, relatedTypes) ->
+                        tasks.add(
+                                pool.submit(
+                                        () ->
+                                                convertComplexType(
+                                                        name, relatedTypes, hashes.get(name)))));
+        for (ForkJoinTask<Element> task : tasks) {
+            consumer.accept(task.join());
+        }
+    }
+
+    /**
+     * Converts a complex type in its own document, returns the root element holding it. If a hash
+     * is provided the cached conversion is used when available.
+     */
+    private Element convertComplexType(String name, Set<String> relatedTypes, String hash) {
+        if (hash != null) {
+            Element cached = cache.get(name, hash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Document fragment = createOutputSchema();
+        Element fragmentRootNode = fragment.createElementNS(XML_NAMESPACE, "xs:schema");
+        fragment.appendChild(fragmentRootNode);
+        new ComplexTypeConverter(schemaTypes, name, relatedTypes)
+                .toGmlFeature(fragment, fragmentRootNode, targetNamespace);
+        if (hash != null) {
+            cache.put(name, hash, fragmentRootNode);
+        }
+        return fragmentRootNode;
+    }
+
+    /** Moves the children of the source element to the target element of another document. */
+    private static void moveChildren(Element source, Document target, Element targetParent) {
+        for (Node child = source.getFirstChild(); child != null; child = child.getNextSibling()) {
+            targetParent.appendChild(target.importNode(child, true));
+            ConversionStats.get().nodesImported(1);
+        }
+    }
+
+    /** Writes the children of the provided root element and detaches them. */
+    private static void flush(GmlSchemaWriter writer, Element rootNode) {
+        long start = System.nanoTime();
+        Node child = rootNode.getFirstChild();
+        while (child != null) {
+            Node next = child.getNextSibling();
+            if (child instanceof Element) {
+                writer.writeElement((Element) child);
+            }
+            rootNode.removeChild(child);
+            child = next;
+        }
+        ConversionStats.get().recordPhase(ConversionStats.SERIALIZATION, start);
+    }
+
+    private void addMultilingualStringTypes(Document outputSchema, Element outputRootNode) {
         // add multilingual string type custom nodes
         /*
             <xs:complexType name="MultilingualStringType">
@@ -142,6 +365,5 @@ public final class Xsd2Gml {
         Element group = outputSchema.createElementNS(XML_NAMESPACE, "xs:attributeGroup");
         group.setAttribute("ref", "gml:AssociationAttributeGroup");
         complexType.appendChild(group);
-        return outputSchema;
     }
 }
@@ -0,0 +1,85 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.getNpraNamespace;
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static it.geosolutions.xsd2gml.Utils.documentToString;
+import static it.geosolutions.xsd2gml.Utils.searchElement;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public final class ConversionCacheTest {
+
+    private static final List<String> TYPES = Arrays.asList("TravelTimeData");
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCachedConversionIsSameAsUncached() throws Exception {
+        File directory = folder.newFolder("cache");
+        SchemaIndex schemaIndex = new SchemaIndex(readDatex23Schema());
+        Xsd2Gml uncached = new Xsd2Gml(schemaIndex, getNpraNamespace(), TYPES);
+        // first run, all the types are converted and cached
+        ConversionCache first = new ConversionCache(directory);
+        Xsd2Gml cold = new Xsd2Gml(schemaIndex, getNpraNamespace(), TYPES, null, first);
+        assertThat(
+                documentToString(cold.getGmlSchema()),
+                is(documentToString(uncached.getGmlSchema())));
+        assertThat(first.getHits(), is(0L));
+        assertTrue(first.getMisses() > 0);
+        // second run, all the types are read from the cache
+        ConversionCache second = new ConversionCache(directory);
+        Xsd2Gml warm = new Xsd2Gml(schemaIndex, getNpraNamespace(), TYPES, null, second);
+        assertThat(
+                documentToString(warm.getGmlSchema()),
+                is(documentToString(uncached.getGmlSchema())));
+        assertThat(second.getHits(), is(first.getMisses()));
+        assertThat(second.getMisses(), is(0L));
+        assertThat(second.getInvalidations(), is(0L));
+        assertArrayEquals(toBytes(uncached), toBytes(warm));
+    }
+
+    @Test
+    public void testChangedTypeIsConvertedAgain() throws Exception {
+        File directory = folder.newFolder("cache");
+        ConversionCache first = new ConversionCache(directory);
+        new Xsd2Gml(new SchemaIndex(readDatex23Schema()), getNpraNamespace(), TYPES, null, first)
+                .getGmlSchema();
+        // change the documentation of the root type
+        Document schema = readDatex23Schema();
+        Element documentation =
+                searchElement(
+                        schema,
+                        "/schema/complexType[@name='TravelTimeData']/annotation/documentation");
+        documentation.setTextContent("Changed documentation.");
+        SchemaIndex schemaIndex = new SchemaIndex(schema);
+        ConversionCache second = new ConversionCache(directory);
+        Xsd2Gml changed = new Xsd2Gml(schemaIndex, getNpraNamespace(), TYPES, null, second);
+        Xsd2Gml uncached = new Xsd2Gml(schemaIndex, getNpraNamespace(), TYPES);
+        assertThat(
+                documentToString(changed.getGmlSchema()),
+                is(documentToString(uncached.getGmlSchema())));
+        // only the changed type and the types related to it are converted again
+        assertTrue(second.getInvalidations() > 0);
+        assertTrue(second.getHits() > 0);
+        assertThat(second.getInvalidations() + second.getHits(), is(first.getMisses()));
+    }
+
+    private static byte[] toBytes(Xsd2Gml xsd2Gml) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        xsd2Gml.write(output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class ConversionJobTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadJobs() throws Exception {
+        File jobsFile = folder.newFile("jobs.txt");
+        FileUtils.write(
+                jobsFile,
+                "# profiles\n"
+                        + "\n"
+                        + "Situation, CctvCameraMetadataRecord;npra;"
+                        + "http://www.vegvesen.no/datex/1.0;out/situation.xsd\n"
+                        + "TravelTimeData;tt;http://example.com/tt;/tmp/tt.xsd\n",
+                StandardCharsets.UTF_8);
+        List<ConversionJob> jobs = ConversionJob.read(jobsFile);
+        assertThat(jobs.size(), is(2));
+        assertThat(
+                jobs.get(0).getRootTypes(),
+                is(Arrays.asList("Situation", "CctvCameraMetadataRecord")));
+        assertThat(
+                jobs.get(0).getTargetNamespace(),
+                is(new QName("http://www.vegvesen.no/datex/1.0", "npra", "npra")));
+        assertThat(jobs.get(0).getOutput(), is(new File(folder.getRoot(), "out/situation.xsd")));
+        assertThat(jobs.get(1).getTargetNamespace().getPrefix(), is("tt"));
+        assertThat(jobs.get(1).getOutput(), is(new File("/tmp/tt.xsd")));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidJob() throws Exception {
+        File jobsFile = folder.newFile("jobs.txt");
+        FileUtils.write(jobsFile, "Situation;npra;out.xsd\n", StandardCharsets.UTF_8);
+        ConversionJob.read(jobsFile);
+    }
+
+    @Test
+    public void testJobsAreSameAsSingleConversions() throws Exception {
+        File schema = folder.newFile("datex_2.3.xsd");
+        FileUtils.copyURLToFile(getClass().getResource("/datex_2.3.xsd"), schema);
+        QName npra = new QName("http://www.vegvesen.no/datex/1.0", "npra", "npra");
+        QName other = new QName("http://example.com/other", "other", "other");
+        List<ConversionJob> jobs =
+                Arrays.asList(
+                        new ConversionJob(
+                                Arrays.asList("TravelTimeData"),
+                                npra,
+                                new File(folder.getRoot(), "travel.xsd")),
+                        new ConversionJob(
+                                Arrays.asList("TravelTimeData", "GroupOfLocationsLinear"),
+                                other,
+                                new File(folder.getRoot(), "other.xsd")));
+        Main.runJobs(jobs, schema.getPath(), false);
+        for (ConversionJob job : jobs) {
+            // each job output is the same of a conversion of its own
+            Xsd2Gml xsd2Gml =
+                    new Xsd2Gml(readDatex23Schema(), job.getTargetNamespace(), job.getRootTypes());
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Utils.writeDocument(
+                    Main.addGmlExtras(
+                            xsd2Gml.getPrefixedGmlSchema(), job.getTargetNamespace().getPrefix()),
+                    expected);
+            assertArrayEquals(
+                    expected.toByteArray(), FileUtils.readFileToByteArray(job.getOutput()));
+        }
+    }
+}
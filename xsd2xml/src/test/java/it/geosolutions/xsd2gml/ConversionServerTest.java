@@ -0,0 +1,118 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.getNpraNamespace;
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public final class ConversionServerTest {
+
+    private static SchemaIndex schemaIndex;
+    private static ConversionServer server;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        schemaIndex = new SchemaIndex(readDatex23Schema());
+        server =
+                new ConversionServer(
+                        0, Collections.singletonMap("datex_2.3", schemaIndex), null, null);
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testConvert() throws Exception {
+        QName namespace = getNpraNamespace();
+        Xsd2Gml xsd2Gml =
+                new Xsd2Gml(schemaIndex, namespace, Arrays.asList("TravelTimeData"));
+        // with extras
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Utils.writeDocument(
+                Main.addGmlExtras(xsd2Gml.getPrefixedGmlSchema(), namespace.getPrefix()),
+                expected);
+        HttpURLConnection connection = get(convertPath(namespace, "TravelTimeData"));
+        assertThat(connection.getResponseCode(), is(200));
+        assertArrayEquals(expected.toByteArray(), read(connection));
+        // without extras, streamed
+        expected = new ByteArrayOutputStream();
+        xsd2Gml.write(expected);
+        connection = get(convertPath(namespace, "TravelTimeData") + "&extras=false");
+        assertThat(connection.getResponseCode(), is(200));
+        assertArrayEquals(expected.toByteArray(), read(connection));
+    }
+
+    @Test
+    public void testInvalidRequests() throws Exception {
+        HttpURLConnection connection = get(convertPath(getNpraNamespace(), "MissingType"));
+        assertThat(connection.getResponseCode(), is(400));
+        connection = get("/convert?types=TravelTimeData");
+        assertThat(connection.getResponseCode(), is(400));
+        connection = get(convertPath(getNpraNamespace(), "TravelTimeData") + "&schema=other");
+        assertThat(connection.getResponseCode(), is(400));
+    }
+
+    @Test
+    public void testMalformedQuery() throws Exception {
+        assertThat(
+                ConversionServer.parseQuery("types=A%2CB&prefix=npra").get("types"), is("A,B"));
+        try {
+            ConversionServer.parseQuery("types=A&roots=%zz");
+            fail("The query is not correctly encoded.");
+        } catch (ConversionServer.InvalidRequestException exception) {
+            assertThat(exception.getMessage(), containsString("roots=%zz"));
+        }
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        get(convertPath(getNpraNamespace(), "MissingType")).getResponseCode();
+        HttpURLConnection connection = get("/stats");
+        assertThat(connection.getResponseCode(), is(200));
+        String stats = new String(read(connection), StandardCharsets.UTF_8);
+        assertThat(stats, containsString("\"requests\":"));
+        assertThat(stats, containsString("\"meanLatencyMs\":"));
+        assertThat(stats, containsString("\"throughputPerSecond\":"));
+    }
+
+    private static String convertPath(QName namespace, String types) throws Exception {
+        return String.format(
+                "/convert?types=%s&prefix=%s&namespace=%s",
+                types,
+                namespace.getPrefix(),
+                URLEncoder.encode(namespace.getNamespaceURI(), "UTF-8"));
+    }
+
+    private static HttpURLConnection get(String path) throws IOException {
+        URL url = new URL("http", "127.0.0.1", server.getPort(), path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private static byte[] read(HttpURLConnection connection) throws IOException {
+        try (InputStream input = connection.getInputStream()) {
+            return IOUtils.toByteArray(input);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.getNpraNamespace;
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public final class ConversionStatsTest {
+
+    @Test
+    public void testConversionIsRecorded() throws Exception {
+        ConversionStats stats = ConversionStats.get();
+        stats.reset();
+        Xsd2Gml xsd2Gml =
+                new Xsd2Gml(
+                        new SchemaIndex(readDatex23Schema()),
+                        getNpraNamespace(),
+                        Arrays.asList("TravelTimeData"));
+        Main.addGmlExtras(xsd2Gml.getPrefixedGmlSchema(), "npra");
+        assertTrue(stats.getTypesVisited() > 0);
+        assertTrue(stats.getTypesConverted() > 0);
+        assertTrue(stats.getNodesImported() > 0);
+        assertTrue(stats.getXPathEvaluations() > 0);
+        assertThat(stats.getPhaseCounts().get(ConversionStats.WALK), is(1L));
+        assertThat(stats.getPhaseCounts().get(ConversionStats.EXTRAS), is(1L));
+        assertThat(
+                stats.getPhaseCounts().get(ConversionStats.CONVERT), is(stats.getTypesConverted()));
+        assertTrue(stats.getPhaseTimes().containsKey(ConversionStats.SERIALIZATION));
+        String json = stats.getJson();
+        assertThat(json, containsString("\"walk\":{\"count\":1,"));
+        assertThat(json, containsString("\"typesConverted\":" + stats.getTypesConverted()));
+    }
+
+    @Test
+    public void testStatsArePublished() throws Exception {
+        ConversionStats stats = ConversionStats.get();
+        stats.reset();
+        stats.bytesWritten(42);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ConversionStats.OBJECT_NAME);
+        assertThat(server.getAttribute(name, "BytesWritten"), is(42L));
+        server.invoke(name, "reset", null, null);
+        assertThat(stats.getBytesWritten(), is(0L));
+    }
+}
@@ -0,0 +1,149 @@
+package it.geosolutions.xsd2gml;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public final class DiffApplierTest {
+
+    private static final String SCHEMA_START =
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">";
+
+    private static final String TEMPLATE =
+            SCHEMA_START
+                    + "<xs:complexType name=\"A\">"
+                    + "  <xs:sequence>"
+                    + "    <xs:element name=\"a1\" type=\"npra:New\"/>"
+                    + "    <xs:element name=\"a2\" type=\"xs:string\"/>"
+                    + "  </xs:sequence>"
+                    + "</xs:complexType>"
+                    + "<xs:complexType name=\"B\">"
+                    + "  <xs:sequence>"
+                    + "    <xs:element name=\"b1\" type=\"xs:string\">"
+                    + "      <xs:complexType name=\"C\"/>"
+                    + "    </xs:element>"
+                    + "  </xs:sequence>"
+                    + "</xs:complexType>"
+                    + "</xs:schema>";
+
+    private static final String ORIGINAL =
+            SCHEMA_START
+                    + "<xs:complexType name=\"A\">"
+                    + "  <xs:sequence>"
+                    + "    <xs:element name=\"a0\" type=\"xs:string\"/>"
+                    + "    <xs:element name=\"a1\" type=\"xs:int\"/>"
+                    + "  </xs:sequence>"
+                    + "</xs:complexType>"
+                    + "<xs:complexType name=\"B\">"
+                    + "  <xs:sequence/>"
+                    + "</xs:complexType>"
+                    + "</xs:schema>";
+
+    private static final String RULE_A1 =
+            "/xs:schema/xs:complexType[@name='A']/xs:sequence"
+                    + "/xs:element[@name='a1' and @type='npra:New']";
+    private static final String RULE_A2 =
+            "/xs:schema/xs:complexType[@name='A']/xs:sequence/xs:element[@name='a2']";
+    private static final String RULE_B1 =
+            "/xs:schema/xs:complexType[@name='B']/xs:sequence/xs:element[@name='b1']";
+    // the parent changes when the previous rule is applied
+    private static final String RULE_C =
+            "/xs:schema/xs:complexType[@name='B']/xs:sequence/xs:element[@name='b1']"
+                    + "/xs:complexType[@name='C']";
+    private static final String RULE_MISSING_PARENT =
+            "/xs:schema/xs:complexType[@name='D']/xs:sequence/xs:element[@name='d1']";
+
+    @Test
+    public void testApplyDifferences() {
+        Document result = apply(RULE_A1, RULE_A2, RULE_B1, RULE_MISSING_PARENT);
+        // the repeated element is replaced, the template prefix is replaced
+        List<Element> elements =
+                GmlDiff.findElementsXpath(
+                        "/xs:schema/xs:complexType[@name='A']/xs:sequence/xs:element", result);
+        assertThat(names(elements), is(Arrays.asList("a0", "a1", "a2")));
+        assertThat(elements.get(1).getAttribute("type"), is("tt:New"));
+        assertThat(find(result, RULE_B1), notNullValue());
+        assertThat(find(result, RULE_MISSING_PARENT), nullValue());
+    }
+
+    @Test
+    public void testCleanRepeatedNameElements() {
+        Document document =
+                GmlDiff.documentFromText(
+                        SCHEMA_START
+                                + "<xs:complexType name=\"A\">"
+                                + "  <xs:sequence>"
+                                + "    <xs:element name=\"a1\" type=\"xs:string\"/>"
+                                + "    <xs:element name=\"a2\" type=\"xs:string\"/>"
+                                + "    <xs:choice>"
+                                + "      <xs:element name=\"a1\" type=\"npra:A1PropertyType\"/>"
+                                + "      <xs:element name=\"a2\" type=\"xs:int\"/>"
+                                + "    </xs:choice>"
+                                + "  </xs:sequence>"
+                                + "</xs:complexType>"
+                                // elements of other types are not repeated elements
+                                + "<xs:complexType name=\"B\">"
+                                + "  <xs:sequence>"
+                                + "    <xs:element name=\"a1\" type=\"xs:string\"/>"
+                                + "  </xs:sequence>"
+                                + "</xs:complexType>"
+                                + "</xs:schema>");
+        DiffApplier diffApplier = new DiffApplier(document, document, "", "npra");
+        assertThat(diffApplier.cleanRepeatedNameElements(), is(1));
+        assertThat(
+                names(GmlDiff.findElementsXpath("//xs:element", document)),
+                is(Arrays.asList("a2", "a1", "a2", "a1")));
+        assertThat(
+                find(document, "//xs:element[@name='a1']").getAttribute("type"),
+                is("npra:A1PropertyType"));
+        assertThat(diffApplier.cleanRepeatedNameElements(), is(0));
+    }
+
+    @Test
+    public void testRulesTrie() {
+        DiffRulesTrie trie = DiffRulesTrie.compile(Arrays.asList(RULE_A1, RULE_A2, RULE_B1));
+        DiffRulesTrie.Matches matches = trie.match(GmlDiff.documentFromText(TEMPLATE));
+        assertThat(matches.getFirst(RULE_A2).getAttribute("type"), is("xs:string"));
+        assertThat(matches.getParents(RULE_B1).size(), is(1));
+        assertThat(matches.isAffectedByChanges(), is(false));
+        assertThat(
+                DiffRulesTrie.compile(Arrays.asList(RULE_B1, RULE_C))
+                        .match(GmlDiff.documentFromText(ORIGINAL))
+                        .isAffectedByChanges(),
+                is(true));
+        // only plain paths of steps can be compiled
+        assertThat(DiffRulesTrie.compile(Arrays.asList("//xs:element[@name='a1']")), nullValue());
+        assertThat(DiffRulesTrie.compile(Arrays.asList("/xs:schema")), nullValue());
+    }
+
+    private static Document apply(String... rules) {
+        return new DiffApplier(
+                        GmlDiff.documentFromText(ORIGINAL),
+                        GmlDiff.documentFromText(TEMPLATE),
+                        String.join("\n", rules),
+                        "tt")
+                .applyDifferences();
+    }
+
+    private static Element find(Document document, String xpath) {
+        List<Element> elements = GmlDiff.findElementsXpath(xpath, document);
+        return elements.isEmpty() ? null : elements.get(0);
+    }
+
+    private static List<String> names(List<Element> elements) {
+        List<String> names = new ArrayList<>();
+        for (Element element : elements) {
+            names.add(element.getAttribute("name"));
+        }
+        return names;
+    }
+}
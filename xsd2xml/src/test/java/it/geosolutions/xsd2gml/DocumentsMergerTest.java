@@ -0,0 +1,111 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.schemaStart;
+import static it.geosolutions.xsd2gml.TestsUtils.writeFile;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class DocumentsMergerTest {
+
+    private static final String SCHEMA_START =
+            schemaStart("xmlns:D2LogicalModel=\"http://datex2.eu/schema/2/2_0\"");
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStreamingMergeIsSameAsDomMerge() throws Exception {
+        List<File> files =
+                Arrays.asList(
+                        writeFile(
+                                folder.getRoot(),
+                                "a.xsd",
+                                SCHEMA_START
+                                        + "<import namespace=\"http://example.com\"/>"
+                                        + "<xs:complexType name=\"A\">"
+                                        + "  <!-- a comment -->"
+                                        + "  <xs:annotation><xs:documentation>A &amp; B"
+                                        + "  </xs:documentation></xs:annotation>"
+                                        + "  <xs:sequence>"
+                                        + "    <xs:element name=\"b\" type=\"D2LogicalModel:B\"/>"
+                                        + "    <xs:element name=\"c\" type=\"xs:string\"/>"
+                                        + "  </xs:sequence>"
+                                        + "</xs:complexType>"
+                                        + "</xs:schema>"),
+                        writeFile(
+                                folder.getRoot(),
+                                "b.xsd",
+                                SCHEMA_START
+                                        + "<xs:simpleType name=\"B\">"
+                                        + "  <xs:restriction base=\"D2LogicalModel:C\"/>"
+                                        + "</xs:simpleType>"
+                                        + "</xs:schema>"));
+        String domMerge =
+                Utils.documentToString(
+                        DocumentsMerger.merge(
+                                Main.loadXsdDocumentFromDirectory(folder.getRoot().getPath()),
+                                "npra",
+                                "http://example.com/npra"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StreamingDocumentsMerger.merge(files, "npra", "http://example.com/npra", output);
+        String streamingMerge =
+                Utils.documentToString(
+                        Utils.readDocument(new ByteArrayInputStream(output.toByteArray())));
+        assertThat(streamingMerge, is(domMerge));
+        assertThat(streamingMerge, containsString("type=\"npra:B\""));
+        assertThat(streamingMerge, containsString("base=\"npra:C\""));
+        assertThat(streamingMerge, not(containsString("<import")));
+    }
+
+    @Test
+    public void testPrefixedImportsAreNotMerged() throws Exception {
+        List<File> files =
+                Arrays.asList(
+                        writeFile(
+                                folder.getRoot(),
+                                "a.xsd",
+                                SCHEMA_START
+                                        + "<xs:import namespace=\"http://example.com\""
+                                        + " schemaLocation=\"http://example.com/a.xsd\"/>"
+                                        + "<xs:simpleType name=\"A\">"
+                                        + "  <xs:restriction base=\"xs:string\"/>"
+                                        + "</xs:simpleType>"
+                                        + "</xs:schema>"),
+                        writeFile(
+                                folder.getRoot(),
+                                "b.xsd",
+                                SCHEMA_START
+                                        + "<xs:import namespace=\"http://example.com/b\">"
+                                        + "  <xs:annotation/>"
+                                        + "</xs:import>"
+                                        + "<xs:simpleType name=\"B\">"
+                                        + "  <xs:restriction base=\"xs:string\"/>"
+                                        + "</xs:simpleType>"
+                                        + "</xs:schema>"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StreamingDocumentsMerger.merge(files, "npra", "http://example.com/npra", output);
+        String streamingMerge =
+                Utils.documentToString(
+                        Utils.readDocument(new ByteArrayInputStream(output.toByteArray())));
+        assertThat(streamingMerge, not(containsString("import")));
+        assertThat(streamingMerge, containsString("name=\"B\""));
+        String domMerge =
+                Utils.documentToString(
+                        DocumentsMerger.merge(
+                                Main.loadXsdDocumentFromDirectory(folder.getRoot().getPath()),
+                                "npra",
+                                "http://example.com/npra"));
+        assertThat(domMerge, is(streamingMerge));
+    }
+}
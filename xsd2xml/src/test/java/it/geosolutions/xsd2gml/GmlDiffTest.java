@@ -0,0 +1,96 @@
+package it.geosolutions.xsd2gml;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public final class GmlDiffTest {
+
+    private static final String SCHEMA_START =
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">";
+
+    private static final Document ORIGIN =
+            GmlDiff.documentFromText(
+                    SCHEMA_START
+                            + "<xs:complexType name=\"A\">"
+                            + "  <xs:sequence>"
+                            + "    <xs:element name=\"a1\" type=\"xs:string\"/>"
+                            + "    <xs:element name=\"a2\" type=\"xs:int\"/>"
+                            + "  </xs:sequence>"
+                            + "</xs:complexType>"
+                            + "<xs:complexType name=\"B\">"
+                            + "  <xs:sequence>"
+                            + "    <xs:element name=\"b1\" type=\"xs:string\"/>"
+                            + "  </xs:sequence>"
+                            + "</xs:complexType>"
+                            + "<xs:element name=\"A\" type=\"A\"/>"
+                            + "</xs:schema>");
+
+    private static final Document TARGET =
+            GmlDiff.documentFromText(
+                    SCHEMA_START
+                            + "<xs:complexType name=\"A\">"
+                            + "  <xs:sequence>"
+                            // type not declared, any type matches
+                            + "    <xs:element name=\"a1\"/>"
+                            // different type
+                            + "    <xs:element name=\"a2\" type=\"xs:string\"/>"
+                            + "    <xs:element name=\"a3\" type=\"xs:string\"/>"
+                            + "  </xs:sequence>"
+                            + "</xs:complexType>"
+                            + "<xs:complexType name=\"B\">"
+                            // b1 exists, but in another parent
+                            + "  <xs:all>"
+                            + "    <xs:element name=\"b1\" type=\"xs:string\"/>"
+                            + "  </xs:all>"
+                            + "</xs:complexType>"
+                            + "<xs:complexType name=\"C\"/>"
+                            + "</xs:schema>");
+
+    @Test
+    public void testMissingElements() {
+        String report = new GmlDiff(ORIGIN, TARGET).compare();
+        assertThat(
+                new HashSet<>(Arrays.asList(report.split("\n"))),
+                is(
+                        new HashSet<>(
+                                Arrays.asList(
+                                        "/xs:schema/xs:complexType[@name='A']/xs:sequence"
+                                                + "/xs:element[@name='a2' and @type='xs:string']",
+                                        "/xs:schema/xs:complexType[@name='A']/xs:sequence"
+                                                + "/xs:element[@name='a3' and @type='xs:string']",
+                                        "/xs:schema/xs:complexType[@name='B']/xs:all",
+                                        "/xs:schema/xs:complexType[@name='C']"))));
+        // every missing rule should select nothing in the origin document
+        for (String rule : report.split("\n")) {
+            assertThat(GmlDiff.findElementsXpath(rule, ORIGIN).isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void testTypeElements() {
+        assertThat(names(GmlDiff.getMissingTypeElements(TARGET, ORIGIN)), is(Arrays.asList("C")));
+        assertThat(
+                names(GmlDiff.getMatchingTypeElements(TARGET, ORIGIN)),
+                is(Arrays.asList("A", "B")));
+        // the element named A doesn't match the complex type named A
+        assertThat(
+                names(GmlDiff.getMatchingTypeElements(ORIGIN, TARGET)),
+                is(Arrays.asList("A", "B")));
+    }
+
+    private static List<String> names(List<Element> elements) {
+        return elements
+                .stream()
+                .map(element -> element.getAttribute("name"))
+                .collect(Collectors.toList());
+    }
+}
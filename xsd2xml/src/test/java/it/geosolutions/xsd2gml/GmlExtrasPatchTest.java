@@ -0,0 +1,63 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.GmlDiff.findElementsXpath;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public final class GmlExtrasPatchTest {
+
+    @Test
+    public void testCompiledPatchContainsTemplateFragments() throws Exception {
+        Document template = readTemplate();
+        String report = readReport();
+        GmlExtrasPatch patch = GmlExtrasPatch.compile(template, report);
+        // write and read it back, as it happens at build time
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        patch.write(output);
+        patch = GmlExtrasPatch.read(new ByteArrayInputStream(output.toByteArray()));
+        assertThat(patch.getRules(), is(Arrays.asList(report.split("\\r?\\n"))));
+        assertThat(patch.size(), is(99));
+        Document target = GmlDiff.getNamespaceAwareBuilder().newDocument();
+        for (String rule : patch.getRules()) {
+            Element expected = findElementsXpath(rule, template).get(0);
+            assertTrue(rule, expected.isEqualNode(patch.importFragment(rule, target)));
+        }
+    }
+
+    @Test
+    public void testBundledPatchIsLoadedOnce() {
+        assertThat(GmlExtrasPatch.get(), sameInstance(GmlExtrasPatch.get()));
+        assertThat(GmlExtrasPatch.get().size(), is(99));
+    }
+
+    private static Document readTemplate() throws Exception {
+        try (InputStream input =
+                GmlExtrasPatchTest.class
+                        .getClassLoader()
+                        .getResourceAsStream(GmlExtrasPatch.TEMPLATE_RESOURCE)) {
+            return GmlDiff.documentFromInputStream(input);
+        }
+    }
+
+    private static String readReport() throws Exception {
+        try (InputStream input =
+                GmlExtrasPatchTest.class
+                        .getClassLoader()
+                        .getResourceAsStream(GmlExtrasPatch.REPORT_RESOURCE)) {
+            return IOUtils.toString(input, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.schemaStart;
+import static it.geosolutions.xsd2gml.TestsUtils.writeFile;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class GmlSchemaValidatorTest {
+
+    private static final String SCHEMA_START =
+            schemaStart(
+                            "xmlns:gml=\"http://www.opengis.net/gml/3.2\"",
+                            "xmlns:npra=\"http://www.vegvesen.no/datex/1.0\"",
+                            "targetNamespace=\"http://www.vegvesen.no/datex/1.0\"",
+                            "elementFormDefault=\"qualified\"")
+                    + "<xs:import namespace=\"http://www.opengis.net/gml/3.2\""
+                    + " schemaLocation=\"http://schemas.opengis.net/gml/3.2.1/gml.xsd\"/>";
+
+    private static final String FEATURE =
+            "<xs:element name=\"A\" substitutionGroup=\"gml:AbstractFeature\" type=\"npra:AType\"/>"
+                    + "<xs:complexType name=\"AType\">"
+                    + "  <xs:complexContent>"
+                    + "    <xs:extension base=\"gml:AbstractFeatureType\">"
+                    + "      <xs:sequence>"
+                    + "        <xs:element name=\"geometry\" type=\"gml:GeometryPropertyType\"/>"
+                    + "      </xs:sequence>"
+                    + "    </xs:extension>"
+                    + "  </xs:complexContent>"
+                    + "</xs:complexType>"
+                    + "<xs:complexType name=\"APropertyType\">"
+                    + "  <xs:sequence minOccurs=\"0\">"
+                    + "    <xs:element ref=\"npra:A\"/>"
+                    + "  </xs:sequence>"
+                    + "  <xs:attributeGroup ref=\"gml:AssociationAttributeGroup\"/>"
+                    + "</xs:complexType>";
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testValidSchema() throws Exception {
+        GmlSchemaValidator validator = GmlSchemaValidator.get(null);
+        assertThat(GmlSchemaValidator.get(null), sameInstance(validator));
+        validator.validate(
+                writeFile(folder.getRoot(), "valid.xsd", SCHEMA_START + FEATURE + "</xs:schema>"));
+    }
+
+    @Test
+    public void testGmlGrammarIsReused() throws Exception {
+        // the GML import is resolved by namespace from the precompiled grammars, its location is
+        // never read, so a location missing in the catalog is not an error
+        String schemaStart =
+                SCHEMA_START.replace(
+                        GmlSchemaValidator.GML_SCHEMA_LOCATION, "http://example.com/gml.xsd");
+        GmlSchemaValidator.get(null)
+                .validate(
+                        writeFile(
+                                folder.getRoot(),
+                                "reused.xsd",
+                                schemaStart + FEATURE + "</xs:schema>"));
+    }
+
+    @Test
+    public void testInvalidSchema() throws Exception {
+        File schema =
+                writeFile(
+                        folder.getRoot(),
+                        "invalid.xsd",
+                        SCHEMA_START
+                                + FEATURE
+                                + "<xs:complexType name=\"BType\">"
+                                + "  <xs:sequence>"
+                                + "    <xs:element name=\"b\" type=\"gml:MissingType\"/>"
+                                + "  </xs:sequence>"
+                                + "</xs:complexType>"
+                                + "</xs:schema>");
+        try {
+            GmlSchemaValidator.get(null).validate(schema);
+            fail("The schema is not valid.");
+        } catch (RuntimeException exception) {
+            assertThat(exception.getMessage(), containsString("gml:MissingType"));
+        }
+    }
+
+    @Test
+    public void testCatalogDirectory() throws Exception {
+        // the catalog directory replaces the bundled catalog
+        File catalog = folder.newFolder("catalog");
+        writeFile(
+                catalog,
+                "schemas.opengis.net/gml/3.2.1/gml.xsd",
+                schemaStart("targetNamespace=\"http://www.opengis.net/gml/3.2\"")
+                        + "<xs:include schemaLocation=\"feature.xsd\"/>"
+                        + "</xs:schema>");
+        writeFile(
+                catalog,
+                "schemas.opengis.net/gml/3.2.1/feature.xsd",
+                schemaStart("targetNamespace=\"http://www.opengis.net/gml/3.2\"")
+                        + "<xs:complexType name=\"OtherType\"/>"
+                        + "</xs:schema>");
+        GmlSchemaValidator validator = GmlSchemaValidator.get(catalog);
+        try {
+            validator.validate(
+                    writeFile(
+                            folder.getRoot(),
+                            "feature.xsd",
+                            SCHEMA_START + FEATURE + "</xs:schema>"));
+            fail("The catalog GML schema has no features.");
+        } catch (RuntimeException exception) {
+            assertThat(exception.getMessage(), containsString("gml:AbstractFeatureType"));
+        }
+        // remote schemas not in the catalog are never downloaded
+        try {
+            validator.validate(
+                    writeFile(
+                            folder.getRoot(),
+                            "remote.xsd",
+                            schemaStart()
+                                    + "<xs:import namespace=\"http://example.com\""
+                                    + " schemaLocation=\"http://example.com/remote.xsd\"/>"
+                                    + "</xs:schema>"));
+            fail("The remote schema is not in the catalog.");
+        } catch (RuntimeException exception) {
+            assertThat(exception.getMessage(), containsString("http://example.com/remote.xsd"));
+        }
+    }
+
+    @Test
+    public void testCatalogDirectoryIsNotCompletedByTheBundledCatalog() throws Exception {
+        File catalog = folder.newFolder("empty");
+        try {
+            GmlSchemaValidator.get(catalog);
+            fail("The catalog directory has no GML schemas.");
+        } catch (RuntimeException exception) {
+            assertThat(
+                    exception.getMessage(),
+                    containsString(GmlSchemaValidator.GML_SCHEMA_LOCATION));
+        }
+    }
+}
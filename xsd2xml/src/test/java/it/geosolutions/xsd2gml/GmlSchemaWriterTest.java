@@ -0,0 +1,63 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.getNpraNamespace;
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23SchemaModel;
+import static it.geosolutions.xsd2gml.Utils.documentToStringNpraPrefixed;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.diff.Diff;
+
+public final class GmlSchemaWriterTest {
+
+    private final Document datex23Schema = readDatex23Schema();
+
+    @Test
+    public void testStreamedSchemaEqualsDocument() {
+        List<String> types = Arrays.asList("Situation", "CctvCameraMetadataRecord");
+        Xsd2Gml xsd2Gml = new Xsd2Gml(datex23Schema, getNpraNamespace(), types);
+        String documentResult = documentToStringNpraPrefixed(xsd2Gml.getGmlSchema(), "npra");
+        String streamedResult = write(xsd2Gml);
+        assertThat(streamedResult, not(containsString("D2LogicalModel")));
+        assertSimilar(documentResult, streamedResult);
+    }
+
+    @Test
+    public void testStreamedModelSchemaEqualsDocument() {
+        List<String> types = Arrays.asList("TravelTimeData");
+        String documentResult =
+                documentToStringNpraPrefixed(
+                        new Xsd2Gml(datex23Schema, getNpraNamespace(), types).getGmlSchema(),
+                        "npra");
+        String streamedResult =
+                write(new Xsd2Gml(readDatex23SchemaModel(), getNpraNamespace(), types));
+        assertSimilar(documentResult, streamedResult);
+    }
+
+    private static String write(Xsd2Gml xsd2Gml) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        xsd2Gml.write(output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void assertSimilar(String expected, String actual) {
+        Diff diff =
+                DiffBuilder.compare(expected)
+                        .withTest(actual)
+                        .ignoreWhitespace()
+                        .checkForSimilar()
+                        .build();
+        assertFalse(diff.toString(), diff.hasDifferences());
+    }
+}
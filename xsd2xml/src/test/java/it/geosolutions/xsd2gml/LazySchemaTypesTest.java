@@ -0,0 +1,125 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.getNpraNamespace;
+import static it.geosolutions.xsd2gml.TestsUtils.schemaStart;
+import static it.geosolutions.xsd2gml.TestsUtils.writeFile;
+import static it.geosolutions.xsd2gml.Utils.documentToStringNpraPrefixed;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.diff.Diff;
+
+public final class LazySchemaTypesTest {
+
+    private static final String SCHEMA_START = schemaStart("xmlns:x=\"http://x\"");
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyNeededSchemasAreRead() throws Exception {
+        File entry =
+                writeFile(
+                        folder.getRoot(),
+                        "entry.xsd",
+                        SCHEMA_START
+                                + "<xs:import namespace=\"http://x\""
+                                + " schemaLocation=\"types/a.xsd\"/>"
+                                + "<xs:include schemaLocation=\"b.xsd\"/>"
+                                + "<xs:include schemaLocation=\"u.xsd\"/>"
+                                + "<xs:import schemaLocation=\"http://www.w3.org/2001/xml.xsd\"/>"
+                                + "</xs:schema>");
+        writeFile(
+                folder.getRoot(),
+                "types/a.xsd",
+                SCHEMA_START
+                        + "<xs:include schemaLocation=\"../b.xsd\"/>"
+                        + "<xs:complexType name=\"A\">"
+                        + "  <xs:complexContent><xs:extension base=\"x:B\">"
+                        + "    <xs:sequence>"
+                        + "      <xs:element name=\"s\" type=\"x:S\"/>"
+                        + "    </xs:sequence>"
+                        + "  </xs:extension></xs:complexContent>"
+                        + "</xs:complexType>"
+                        + "</xs:schema>");
+        writeFile(
+                folder.getRoot(),
+                "b.xsd",
+                SCHEMA_START
+                        + "<xs:complexType name=\"B\">"
+                        + "  <xs:sequence>"
+                        + "    <xs:element name=\"b\" type=\"x:S\"/>"
+                        + "  </xs:sequence>"
+                        + "</xs:complexType>"
+                        + "<xs:simpleType name=\"S\">"
+                        + "  <xs:restriction base=\"xs:string\"/>"
+                        + "</xs:simpleType>"
+                        + "</xs:schema>");
+        writeFile(
+                folder.getRoot(),
+                "u.xsd",
+                SCHEMA_START
+                        + "<xs:complexType name=\"U\">"
+                        + "  <xs:simpleContent>"
+                        + "    <xs:extension base=\"xs:string\"/>"
+                        + "  </xs:simpleContent>"
+                        + "</xs:complexType>"
+                        + "</xs:schema>");
+        // not reachable from the entry schema, reading it would fail
+        writeFile(folder.getRoot(), "unrelated.xsd", "<xs:schema");
+        LazySchemaTypes schemaTypes =
+                new LazySchemaTypes(entry, "D2LogicalModel", "http://targetnamespace.org/1.0");
+        assertThat(names(schemaTypes.getFiles()), is(Arrays.asList("entry", "a", "b", "u")));
+        assertThat(schemaTypes.getSuperTypeName("A"), is("B"));
+        assertThat(schemaTypes.getExtensionNames("B"), is(Collections.singleton("A")));
+        assertThat(schemaTypes.hasSimpleContent("U"), is(true));
+        assertThat(schemaTypes.isSimpleType("S"), is(true));
+        assertThat(schemaTypes.getLoadedFiles().isEmpty(), is(true));
+        String lazyResult = convert(schemaTypes);
+        assertThat(
+                new HashSet<>(names(schemaTypes.getLoadedFiles())),
+                is(new HashSet<>(Arrays.asList("a", "b"))));
+        // same result of the merge of the reachable schemas
+        List<Document> documents = new ArrayList<>();
+        for (File file : schemaTypes.getFiles()) {
+            documents.add(Utils.readDocument(file.getPath()));
+        }
+        Document merged =
+                DocumentsMerger.merge(
+                        documents, "D2LogicalModel", "http://targetnamespace.org/1.0");
+        Diff diff =
+                DiffBuilder.compare(convert(new SchemaIndex(merged)))
+                        .withTest(lazyResult)
+                        .ignoreWhitespace()
+                        .checkForSimilar()
+                        .build();
+        assertFalse(diff.toString(), diff.hasDifferences());
+    }
+
+    private static String convert(SchemaTypes schemaTypes) {
+        return documentToStringNpraPrefixed(
+                new Xsd2Gml(schemaTypes, getNpraNamespace(), Arrays.asList("A")).getGmlSchema(),
+                "npra");
+    }
+
+    private static List<String> names(Set<File> files) {
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName().replace(".xsd", ""));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,65 @@
+package it.geosolutions.xsd2gml;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+public final class MainTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoadXsdDocumentsFromDirectory() throws Exception {
+        // created out of order, documents should be sorted by file name
+        for (String name : Arrays.asList("c", "a", "d", "b")) {
+            FileUtils.write(
+                    folder.newFile(name + ".xsd"),
+                    "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+                            + "<xs:complexType name=\""
+                            + name
+                            + "\"/></xs:schema>",
+                    StandardCharsets.UTF_8);
+        }
+        FileUtils.write(folder.newFile("e.txt"), "not a schema", StandardCharsets.UTF_8);
+        List<Document> documents = Main.loadXsdDocumentFromDirectory(folder.getRoot().getPath());
+        List<String> names = new ArrayList<>();
+        for (Document document : documents) {
+            names.add(Utils.searchElement(document, "/schema/complexType").getAttribute("name"));
+        }
+        assertThat(names, is(Arrays.asList("a", "b", "c", "d")));
+    }
+
+    @Test
+    public void testCacheDirectories() {
+        // jobs with the same prefix and different namespaces use different directories
+        File cache = folder.getRoot();
+        File npra = Main.getCacheDirectory(cache, new QName("http://a.com/1.0", "npra", "npra"));
+        assertThat(
+                Main.getCacheDirectory(cache, new QName("http://a.com/1.0", "npra", "npra")),
+                is(npra));
+        assertThat(
+                Main.getCacheDirectory(cache, new QName("http://b.com/1.0", "npra", "npra")),
+                not(npra));
+        assertThat(npra.getName().startsWith("npra-"), is(true));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidSchemaInDirectory() throws Exception {
+        FileUtils.write(folder.newFile("a.xsd"), "<xs:schema", StandardCharsets.UTF_8);
+        Main.loadXsdDocumentFromDirectory(folder.getRoot().getPath());
+    }
+}
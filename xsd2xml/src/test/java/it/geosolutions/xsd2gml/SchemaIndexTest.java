@@ -0,0 +1,34 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public final class SchemaIndexTest {
+
+    private final SchemaIndex schemaIndex = new SchemaIndex(readDatex23Schema());
+
+    @Test
+    public void testTypesLookup() {
+        assertThat(schemaIndex.getComplexType("Situation"), notNullValue());
+        assertThat(schemaIndex.getSimpleType("Situation"), nullValue());
+        assertThat(schemaIndex.getSimpleType("ProbabilityOfOccurrenceEnum"), notNullValue());
+        assertThat(schemaIndex.isComplexType("ProbabilityOfOccurrenceEnum"), is(false));
+        assertThat(schemaIndex.getComplexType("NotExistingType"), nullValue());
+    }
+
+    @Test
+    public void testSimpleContentAndSuperTypes() {
+        assertThat(schemaIndex.hasSimpleContent("_ProbabilityOfOccurrenceEnum"), is(true));
+        assertThat(
+                schemaIndex.getSuperTypeName("_ProbabilityOfOccurrenceEnum"),
+                is("ProbabilityOfOccurrenceEnum"));
+        assertThat(schemaIndex.hasSimpleContent("GroupOfLocationsLinear"), is(false));
+        assertThat(schemaIndex.getSuperTypeName("GroupOfLocationsLinear"), is("GroupOfLocations"));
+        assertThat(schemaIndex.getExtensionNames("GroupOfLocations").size(), is(4));
+    }
+}
@@ -0,0 +1,65 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.getNpraNamespace;
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23SchemaModel;
+import static it.geosolutions.xsd2gml.Utils.documentToStringNpraPrefixed;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.diff.Diff;
+
+public final class SchemaModelTest {
+
+    private final Document datex23Schema = readDatex23Schema();
+    private final SchemaModel datex23Model = readDatex23SchemaModel();
+
+    @Test
+    public void testModelContent() {
+        // simple type 'ProbabilityOfOccurrenceEnum' is declared twice
+        assertThat(datex23Model.size(), is(437 + 229));
+        assertThat(datex23Model.hasSimpleContent("MultilingualStringValue"), is(true));
+        assertThat(
+                datex23Model.getSuperTypeName("GroupOfLocationsLinear"), is("GroupOfLocations"));
+        assertThat(datex23Model.getExtensionNames("GroupOfLocations").size(), is(4));
+    }
+
+    @Test
+    public void testWalkingModelAndDocument() {
+        List<String> types = Arrays.asList("Situation", "CctvCameraMetadataRecord");
+        SchemaWalker documentWalker = new SchemaWalker(datex23Schema, types);
+        SchemaWalker modelWalker = new SchemaWalker(datex23Model, types);
+        assertThat(
+                modelWalker.getRootComplexTypeNames(),
+                is(documentWalker.getRootComplexTypeNames()));
+        assertThat(
+                modelWalker.getRootSimpleTypeNames(), is(documentWalker.getRootSimpleTypeNames()));
+    }
+
+    @Test
+    public void testConvertingModelAndDocument() {
+        List<String> types = Arrays.asList("Situation");
+        String documentResult =
+                documentToStringNpraPrefixed(
+                        new Xsd2Gml(datex23Schema, getNpraNamespace(), types).getGmlSchema(),
+                        "npra");
+        String modelResult =
+                documentToStringNpraPrefixed(
+                        new Xsd2Gml(datex23Model, getNpraNamespace(), types).getGmlSchema(),
+                        "npra");
+        Diff diff =
+                DiffBuilder.compare(documentResult)
+                        .withTest(modelResult)
+                        .ignoreWhitespace()
+                        .checkForSimilar()
+                        .build();
+        assertFalse(diff.toString(), diff.hasDifferences());
+    }
+}
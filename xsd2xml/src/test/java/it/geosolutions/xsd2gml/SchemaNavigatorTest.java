@@ -0,0 +1,38 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static it.geosolutions.xsd2gml.Utils.searchElements;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public final class SchemaNavigatorTest {
+
+    private final Document datex23Schema = readDatex23Schema();
+
+    @Test
+    public void testNavigationMatchesXPath() {
+        // the navigation results should be the same of the XPath for every complex type
+        List<Element> complexTypes = searchElements(datex23Schema, "/schema/complexType");
+        assertThat(complexTypes.size(), is(437));
+        for (Element complexType : complexTypes) {
+            assertThat(
+                    SchemaNavigator.getPropertyElements(complexType),
+                    is(searchElements(complexType, "*//element")));
+            assertThat(
+                    SchemaNavigator.getAttributeElements(complexType),
+                    is(searchElements(complexType, "attribute")));
+            assertThat(
+                    SchemaNavigator.getDocumentationElements(complexType),
+                    is(searchElements(complexType, "annotation/documentation")));
+            assertThat(
+                    SchemaNavigator.getExtensionElements(complexType),
+                    is(searchElements(complexType, "*/extension")));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.getNpraNamespace;
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static it.geosolutions.xsd2gml.TestsUtils.schemaStart;
+import static it.geosolutions.xsd2gml.TestsUtils.writeFile;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class StreamingGmlDiffTest {
+
+    private static final String SCHEMA_START = schemaStart();
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMissingElements() throws Exception {
+        File origin =
+                writeFile(
+                        folder.getRoot(),
+                        "origin.xsd",
+                        SCHEMA_START
+                                + "<xs:complexType name=\"A\">"
+                                + "  <xs:annotation><xs:documentation>A type"
+                                + "  </xs:documentation></xs:annotation>"
+                                + "  <xs:sequence>"
+                                + "    <xs:element name=\"a1\" type=\"xs:string\"/>"
+                                + "  </xs:sequence>"
+                                + "</xs:complexType>"
+                                + "<!-- B type -->"
+                                + "<xs:complexType name=\"B\"/>"
+                                + "</xs:schema>");
+        File target =
+                writeFile(
+                        folder.getRoot(),
+                        "target.xsd",
+                        SCHEMA_START
+                                + "<xs:complexType name=\"A\">"
+                                + "  <xs:annotation><xs:documentation>Other"
+                                + "  </xs:documentation></xs:annotation>"
+                                + "  <xs:sequence>"
+                                + "    <xs:element name=\"a1\"/>"
+                                + "    <xs:element name=\"a2\" type=\"xs:int\"/>"
+                                + "  </xs:sequence>"
+                                + "</xs:complexType>"
+                                + "<xs:complexType name=\"C\"><xs:sequence/></xs:complexType>"
+                                + "</xs:schema>");
+        assertThat(
+                streamingDiff(origin, target),
+                is(
+                        new HashSet<>(
+                                Arrays.asList(
+                                        "/xs:schema/xs:complexType[@name='A']/xs:sequence"
+                                                + "/xs:element[@name='a2' and @type='xs:int']",
+                                        "/xs:schema/xs:complexType[@name='C']"))));
+        assertThat(streamingDiff(origin, target), is(domDiff(origin, target)));
+        assertThat(streamingDiff(target, origin), is(domDiff(target, origin)));
+    }
+
+    @Test
+    public void testSameAsDomDiff() throws Exception {
+        // a converted schema against the GML template, in both directions
+        QName namespace = getNpraNamespace();
+        Xsd2Gml xsd2Gml =
+                new Xsd2Gml(readDatex23Schema(), namespace, Arrays.asList("TravelTimeData"));
+        File converted = folder.newFile("converted.xsd");
+        try (OutputStream output = new FileOutputStream(converted)) {
+            Utils.writeDocument(xsd2Gml.getPrefixedGmlSchema(), output);
+        }
+        File template = folder.newFile("template.xsd");
+        FileUtils.copyURLToFile(getClass().getResource("/datex_2.3_gml.xsd"), template);
+        Set<String> missing = streamingDiff(template, converted);
+        assertThat(missing.isEmpty(), is(false));
+        assertThat(missing, is(domDiff(template, converted)));
+        assertThat(streamingDiff(converted, template), is(domDiff(converted, template)));
+    }
+
+    private static Set<String> streamingDiff(File origin, File target) {
+        StringWriter report = new StringWriter();
+        StreamingGmlDiff.compare(origin, target, report);
+        return lines(report.toString());
+    }
+
+    private static Set<String> domDiff(File origin, File target) throws Exception {
+        try (InputStream originInput = new FileInputStream(origin);
+                InputStream targetInput = new FileInputStream(target)) {
+            return lines(
+                    new GmlDiff(
+                                    GmlDiff.documentFromInputStream(originInput),
+                                    GmlDiff.documentFromInputStream(targetInput))
+                            .compare());
+        }
+    }
+
+    private static Set<String> lines(String report) {
+        Set<String> lines = new HashSet<>();
+        for (String line : report.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -2,10 +2,14 @@ package it.geosolutions.xsd2gml;
 
 import static it.geosolutions.xsd2gml.Utils.readDocument;
 import static it.geosolutions.xsd2gml.Utils.searchElement;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import javax.xml.namespace.QName;
+import org.apache.commons.io.FileUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -32,6 +36,25 @@ final class TestsUtils {
         }
     }
 
+    static SchemaModel readDatex23SchemaModel() {
+        InputStream input = TestsUtils.class.getResourceAsStream("/datex_2.3.xsd");
+        if (input == null) {
+            // strange, let's at least be clear about what happend.
+            throw new RuntimeException("Resource '/datex_2.3.xsd' nor found.");
+        }
+        // read the schema
+        try {
+            return SchemaModelReader.read(input);
+        } finally {
+            // make sure we close the input stream
+            try {
+                input.close();
+            } catch (Exception exception) {
+                // nothing we can do about it
+            }
+        }
+    }
+
     static List<Element> getComplexTypes(Document schema, String... complexTypeNames) {
         List<Element> complexTypes = new ArrayList<>();
         for (String complexTypeName : complexTypeNames) {
@@ -49,4 +72,29 @@ final class TestsUtils {
     static QName getNpraNamespace() {
         return new QName("http://www.vegvesen.no/datex/1.0", "npra", "npra");
     }
+
+    /**
+     * Start tag of a test schema declaring the XML schema namespace with the xs prefix, followed
+     * by the provided attributes.
+     */
+    static String schemaStart(String... attributes) {
+        StringBuilder start =
+                new StringBuilder("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"");
+        for (String attribute : attributes) {
+            start.append(' ').append(attribute);
+        }
+        return start.append('>').toString();
+    }
+
+    /** Writes a test file in the provided directory, its parent directories are created. */
+    static File writeFile(File directory, String name, String content) {
+        File file = new File(directory, name);
+        try {
+            FileUtils.write(file, content, StandardCharsets.UTF_8);
+        } catch (IOException exception) {
+            throw new RuntimeException(
+                    String.format("Error writing test file '%s'.", file), exception);
+        }
+        return file;
+    }
 }
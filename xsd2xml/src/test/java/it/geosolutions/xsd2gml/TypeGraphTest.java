@@ -0,0 +1,141 @@
+package it.geosolutions.xsd2gml;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public final class TypeGraphTest {
+
+    // A and B reference each other, C extends A and D extends C
+    private static final String SCHEMA =
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\""
+                    + " xmlns:D2LogicalModel=\"http://datex2.eu/schema/2/2_0\">"
+                    + "<xs:complexType name=\"A\"><xs:sequence>"
+                    + "<xs:element name=\"b\" type=\"D2LogicalModel:B\"/>"
+                    + "</xs:sequence></xs:complexType>"
+                    + "<xs:complexType name=\"B\"><xs:sequence>"
+                    + "<xs:element name=\"a\" type=\"D2LogicalModel:A\"/>"
+                    + "<xs:element name=\"s\" type=\"D2LogicalModel:S\"/>"
+                    + "</xs:sequence></xs:complexType>"
+                    + "<xs:complexType name=\"C\"><xs:complexContent>"
+                    + "<xs:extension base=\"D2LogicalModel:A\"/>"
+                    + "</xs:complexContent></xs:complexType>"
+                    + "<xs:complexType name=\"D\"><xs:complexContent>"
+                    + "<xs:extension base=\"D2LogicalModel:C\"/>"
+                    + "</xs:complexContent></xs:complexType>"
+                    + "<xs:complexType name=\"E\"><xs:sequence>"
+                    + "<xs:element name=\"x\" type=\"D2LogicalModel:X\"/>"
+                    + "</xs:sequence></xs:complexType>"
+                    + "<xs:simpleType name=\"S\"><xs:restriction base=\"xs:string\"/></xs:simpleType>"
+                    + "</xs:schema>";
+
+    private final TypeGraph typeGraph =
+            new TypeGraph(
+                    new SchemaIndex(
+                            Utils.readDocument(
+                                    new ByteArrayInputStream(
+                                            SCHEMA.getBytes(StandardCharsets.UTF_8)))));
+
+    @Test
+    public void testRelatedTypes() {
+        assertThat(typeGraph.getRelatedTypes("A"), is(new HashSet<>(Arrays.asList("C", "D"))));
+        assertThat(typeGraph.getRelatedTypes("C"), is(new HashSet<>(Arrays.asList("A", "D"))));
+        assertThat(typeGraph.getRelatedTypes("D"), is(new HashSet<>(Arrays.asList("A", "C"))));
+        assertThat(typeGraph.getRelatedTypes("B"), is(Collections.emptySet()));
+        // closures are memoized
+        assertThat(typeGraph.getRelatedTypes("A"), sameInstance(typeGraph.getRelatedTypes("A")));
+    }
+
+    @Test
+    public void testReachableTypesWithCycles() {
+        HashSet<String> expected = new HashSet<>(Arrays.asList("A", "B", "C", "D", "S"));
+        assertThat(typeGraph.getReachableTypes(Collections.singletonList("B")), is(expected));
+        assertThat(typeGraph.getReachableTypes(Collections.singletonList("D")), is(expected));
+        assertThat(
+                typeGraph.getReachableTypes(Collections.singletonList("S")),
+                is(Collections.singleton("S")));
+    }
+
+    @Test
+    public void testReachableTypesOfLongChain() {
+        // each type references the next one, the walk memory is linear in the chain length
+        int length = 20_000;
+        StringBuilder schema =
+                new StringBuilder(
+                        "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\""
+                                + " xmlns:D2LogicalModel=\"http://datex2.eu/schema/2/2_0\">");
+        for (int i = 0; i < length; i++) {
+            schema.append("<xs:complexType name=\"T").append(i).append("\"><xs:sequence>");
+            if (i + 1 < length) {
+                schema.append("<xs:element name=\"next\" type=\"D2LogicalModel:T")
+                        .append(i + 1)
+                        .append("\"/>");
+            }
+            schema.append("</xs:sequence></xs:complexType>");
+        }
+        schema.append("</xs:schema>");
+        SchemaModel model =
+                SchemaModelReader.read(
+                        new ByteArrayInputStream(
+                                schema.toString().getBytes(StandardCharsets.UTF_8)));
+        assertThat(
+                new TypeGraph(model).getReachableTypes(Collections.singletonList("T0")).size(),
+                is(length));
+    }
+
+    @Test
+    public void testParallelWalk() {
+        List<String> types = Arrays.asList("Situation", "CctvCameraMetadataRecord");
+        SchemaModel model = TestsUtils.readDatex23SchemaModel();
+        SchemaWalker sequential = new SchemaWalker(model, new TypeGraph(model), types);
+        SchemaWalker parallel =
+                new SchemaWalker(model, new TypeGraph(model), types, ForkJoinPool.commonPool());
+        assertThat(parallel.getRootComplexTypeNames(), is(sequential.getRootComplexTypeNames()));
+        assertThat(parallel.getRootSimpleTypeNames(), is(sequential.getRootSimpleTypeNames()));
+    }
+
+    @Test
+    public void testConcurrentWalks() throws Exception {
+        // walks of a shared graph run concurrently and memoize the same values of a sequential run
+        SchemaModel model = TestsUtils.readDatex23SchemaModel();
+        List<String> roots =
+                Arrays.asList("Situation", "CctvCameraMetadataRecord", "MeasuredDataPublication");
+        TypeGraph shared = new TypeGraph(model);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Set<String>>> walks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String root = roots.get(i % roots.size());
+                walks.add(
+                        executor.submit(
+                                () -> shared.getReachableTypes(Collections.singletonList(root))));
+            }
+            for (int i = 0; i < walks.size(); i++) {
+                List<String> root = Collections.singletonList(roots.get(i % roots.size()));
+                assertThat(walks.get(i).get(), is(new TypeGraph(model).getReachableTypes(root)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testReachableMissingType() {
+        typeGraph.getReachableTypes(Collections.singletonList("E"));
+    }
+}
@@ -0,0 +1,52 @@
+package it.geosolutions.xsd2gml;
+
+import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public final class XPathEngineTest {
+
+    private final Document datex23Schema = readDatex23Schema();
+
+    @Test
+    public void testCompiledExpressionsAreReused() {
+        String xpath = "/schema/complexType[@name='Situation']";
+        Utils.searchElement(datex23Schema, xpath);
+        long hits = XPathEngine.getCacheHits();
+        long misses = XPathEngine.getCacheMisses();
+        Utils.searchElement(datex23Schema, xpath);
+        assertThat(XPathEngine.getCacheHits(), is(hits + 1));
+        assertThat(XPathEngine.getCacheMisses(), is(misses));
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                // each task uses its own document, DOM nodes are not thread safe
+                Document document = readDatex23Schema();
+                results.add(
+                        executor.submit(
+                                () -> Utils.searchElements(document, "/schema/simpleType").size()));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get(), is(230));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(XPathEngine.getCacheHits() > 0);
+    }
+}
@@ -0,0 +1,98 @@
+package it.geosolutions.xsd2gml;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public final class XmlSupportTest {
+
+    @Test
+    public void testExternalResourcesAreNotFetched() throws Exception {
+        // nothing listens on the discard port, fetching the DTD or the entity would fail
+        String text =
+                "<!DOCTYPE xs:schema SYSTEM \"http://localhost:9/schema.dtd\" ["
+                        + "<!ENTITY external SYSTEM \"http://localhost:9/entity.txt\">]>"
+                        + "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+                        + "<xs:annotation><xs:documentation>&external;</xs:documentation>"
+                        + "</xs:annotation></xs:schema>";
+        for (DocumentBuilder builder :
+                new DocumentBuilder[] {
+                    XmlSupport.getDocumentBuilder(), XmlSupport.getNamespaceAwareDocumentBuilder()
+                }) {
+            Document document =
+                    builder.parse(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+            assertThat(document.getDocumentElement().getTextContent(), is(""));
+        }
+    }
+
+    @Test
+    public void testStreamReaders() throws Exception {
+        // nothing listens on the discard port, fetching the DTD would fail
+        byte[] text =
+                ("<!DOCTYPE xs:schema SYSTEM \"http://localhost:9/schema.dtd\">"
+                                + "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+                                + "<xs:element name=\"a\"/></xs:schema>")
+                        .getBytes(StandardCharsets.UTF_8);
+        XMLStreamReader reader = XmlSupport.createStreamReader(new ByteArrayInputStream(text));
+        moveToRoot(reader);
+        // not namespace aware, the prefix is kept
+        assertThat(reader.getLocalName(), is("xs:schema"));
+        reader = XmlSupport.createNamespaceAwareStreamReader(new ByteArrayInputStream(text));
+        moveToRoot(reader);
+        assertThat(reader.getLocalName(), is("schema"));
+        assertThat(reader.getNamespaceURI(), is("http://www.w3.org/2001/XMLSchema"));
+    }
+
+    @Test
+    public void testInstancesAreReusedPerThread() throws Exception {
+        DocumentBuilder builder = XmlSupport.getDocumentBuilder();
+        assertThat(XmlSupport.getDocumentBuilder(), sameInstance(builder));
+        assertThat(
+                CompletableFuture.supplyAsync(XmlSupport::getDocumentBuilder).get(),
+                not(sameInstance(builder)));
+        // output properties set by a previous user are reset
+        Transformer transformer = XmlSupport.getTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        assertThat(XmlSupport.getTransformer(), sameInstance(transformer));
+        assertThat(
+                XmlSupport.getTransformer().getOutputProperties().getProperty(OutputKeys.INDENT),
+                is(not("yes")));
+        assertThat(XmlSupport.newDocument().getDocumentElement(), nullValue());
+    }
+
+    @Test
+    public void testDocumentsAreIndentedWithTwoSpaces() throws Exception {
+        Document document =
+                XmlSupport.getDocumentBuilder()
+                        .parse(
+                                new ByteArrayInputStream(
+                                        "<a><b><c/></b></a>".getBytes(StandardCharsets.UTF_8)));
+        String expected = "<a>\n  <b>\n    <c/>\n  </b>\n</a>\n";
+        assertThat(Utils.documentToString(document).replace("\r", ""), is(expected));
+        // a previous user changed the indentation of the reused transformer
+        Transformer transformer = XmlSupport.getTransformer();
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+        assertThat(XmlSupport.getTransformer(), sameInstance(transformer));
+        assertThat(Utils.documentToString(document).replace("\r", ""), is(expected));
+    }
+
+    private static void moveToRoot(XMLStreamReader reader) throws Exception {
+        // the DTD event is skipped
+        while (reader.next() != XMLStreamConstants.START_ELEMENT) {}
+    }
+}
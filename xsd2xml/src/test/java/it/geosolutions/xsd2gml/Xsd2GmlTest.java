@@ -2,11 +2,19 @@ package it.geosolutions.xsd2gml;
 
 import static it.geosolutions.xsd2gml.TestsUtils.getNpraNamespace;
 import static it.geosolutions.xsd2gml.TestsUtils.readDatex23Schema;
+import static it.geosolutions.xsd2gml.Utils.documentToString;
 import static it.geosolutions.xsd2gml.Utils.documentToStringNpraPrefixed;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -14,6 +22,8 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.junit.Test;
 import org.w3c.dom.Document;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.diff.Diff;
 import org.xml.sax.SAXException;
 
 public final class Xsd2GmlTest {
@@ -57,6 +67,47 @@ public final class Xsd2GmlTest {
         //        FileUtils.write(testResultFile, content, StandardCharsets.UTF_8);
     }
 
+    @Test
+    public void testPrefixedSchemaWithExtras() {
+        Xsd2Gml xsd2Gml =
+                new Xsd2Gml(datex23Schema, getNpraNamespace(), Arrays.asList("TravelTimeData"));
+        // serialized and parsed again, as it used to be done
+        String expected =
+                Main.addGmlExtras(
+                        documentToStringNpraPrefixed(xsd2Gml.getGmlSchema(), "npra"), "npra");
+        // extras applied directly to the converted DOM
+        String result =
+                documentToString(Main.addGmlExtras(xsd2Gml.getPrefixedGmlSchema(), "npra"));
+        Diff diff =
+                DiffBuilder.compare(expected)
+                        .withTest(result)
+                        .ignoreWhitespace()
+                        .checkForSimilar()
+                        .build();
+        assertFalse(diff.toString(), diff.hasDifferences());
+    }
+
+    @Test
+    public void testParallelConversionIsSameAsSequential() {
+        List<String> types = Arrays.asList("Situation", "CctvCameraMetadataRecord");
+        SchemaIndex schemaIndex = new SchemaIndex(datex23Schema);
+        Xsd2Gml sequential = new Xsd2Gml(schemaIndex, getNpraNamespace(), types);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Xsd2Gml parallel = new Xsd2Gml(schemaIndex, getNpraNamespace(), types, pool, null);
+            assertThat(
+                    documentToString(parallel.getGmlSchema()),
+                    is(documentToString(sequential.getGmlSchema())));
+            ByteArrayOutputStream sequentialOutput = new ByteArrayOutputStream();
+            sequential.write(sequentialOutput);
+            ByteArrayOutputStream parallelOutput = new ByteArrayOutputStream();
+            parallel.write(parallelOutput);
+            assertArrayEquals(sequentialOutput.toByteArray(), parallelOutput.toByteArray());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     private Document loadDocument(File file)
             throws ParserConfigurationException, SAXException, IOException {
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();